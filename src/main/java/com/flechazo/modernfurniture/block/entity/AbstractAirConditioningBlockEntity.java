@@ -1,9 +1,13 @@
 package com.flechazo.modernfurniture.block.entity;
 
 import com.flechazo.modernfurniture.ModernFurniture;
-import com.flechazo.modernfurniture.config.module.SnowGenerationConfig;
 import com.flechazo.modernfurniture.util.RoomDetector;
-import com.flechazo.modernfurniture.util.snow.SnowManager;
+import com.flechazo.modernfurniture.util.room.RoomDetectionJob;
+import com.flechazo.modernfurniture.util.room.RoomMember;
+import com.flechazo.modernfurniture.util.room.RoomRegistry;
+import com.flechazo.modernfurniture.util.room.RoomShape;
+import com.flechazo.modernfurniture.util.room.RoomValidator;
+import com.flechazo.modernfurniture.util.room.SharedRoom;
 import com.flechazo.modernfurniture.util.snow.SnowStats;
 import com.flechazo.modernfurniture.util.wire.WireConnectable;
 import com.flechazo.modernfurniture.util.wire.WireConnection;
@@ -12,6 +16,7 @@ import com.flechazo.modernfurniture.util.wire.WireNetworkManager;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.entity.BlockEntity;
@@ -19,17 +24,26 @@ import net.minecraft.world.level.block.entity.BlockEntityType;
 import net.minecraft.world.level.block.state.BlockState;
 
 import java.util.Set;
-import java.util.concurrent.CompletableFuture;
 
-public abstract class AbstractAirConditioningBlockEntity extends AbstractAnimatableBlockEntity implements WireConnectable {
-    private static final long PERFORMANCE_LOG_INTERVAL = 60000;
+public abstract class AbstractAirConditioningBlockEntity extends AbstractAnimatableBlockEntity implements WireConnectable, RoomMember {
+    private static final long ROOM_VALIDATION_TIMEOUT = 100; // 等待边界区块加载的最长时间（刻）
 
-    private CompletableFuture<Void> roomDetectionFuture;
     private boolean isCooling = false;
     private long coolingStartTime = 0;
-    private Set<BlockPos> roomBlocks = null;
-    private SnowManager snowManager = null;
-    private long lastPerformanceLog = 0;
+    // 与同一房间内的其他空调共享
+    private SharedRoom room = null;
+    private BlockPos roomStartPos = null;
+    private RoomDetectionJob pendingDetection = null;
+    // 从NBT恢复、等待校验的房间
+    private RoomShape savedRoom = null;
+    private BlockPos savedRoomStartPos = null;
+    private long savedRoomBoundaryHash = 0;
+    private long savedRoomDeadline = -1;
+    private int savedRoomSnowCycles = 0;
+    // 保存时指纹对应的不是房间当前形状，恢复时无法校验
+    private boolean savedRoomHashStale = false;
+    // 区块卸载时保留房间积雪，而不是像拆除空调那样逐层融化
+    private boolean chunkUnloading = false;
     private boolean hasValidConnection = false;
 
     public AbstractAirConditioningBlockEntity(BlockEntityType<?> type, BlockPos pos, BlockState state) {
@@ -50,22 +64,166 @@ public abstract class AbstractAirConditioningBlockEntity extends AbstractAnimata
             return;
         }
 
-        if (this.level instanceof ServerLevel) {
-            BlockPos startPos = getRoomDetectionStartPos();
-            Set<BlockPos> detectedRoom = RoomDetector.findRoom(this.level, startPos);
+        if (this.level instanceof ServerLevel serverLevel) {
+            if (room != null || pendingDetection != null) {
+                return;
+            }
 
-            if (detectedRoom != null && !detectedRoom.isEmpty()) {
-                this.roomBlocks = detectedRoom;
-                this.isCooling = true;
-                this.coolingStartTime = this.level.getGameTime();
+            BlockPos startPos = getRoomDetectionStartPos();
+            RoomRegistry registry = RoomRegistry.get(serverLevel);
+
+            // 已有空调检测过该房间时直接加入
+            SharedRoom existing = registry.getRoomAt(startPos);
+            if (existing != null) {
+                discardSavedRoom();
+                joinRoom(existing, startPos);
+                return;
+            }
 
-                if (SnowGenerationConfig.enableSnow) {
-                    this.snowManager = new SnowManager((ServerLevel) this.level, detectedRoom);
+            if (hasSavedRoomFor(startPos) && !RoomValidator.isBoundaryLoaded(serverLevel, savedRoom)) {
+                // 边界区块尚未加载，延迟到serverTick中校验
+                if (savedRoomDeadline < 0) {
+                    savedRoomDeadline = serverLevel.getGameTime() + ROOM_VALIDATION_TIMEOUT;
                 }
+                return;
+            }
 
-                this.setChanged();
+            int snowCycles = savedRoomSnowCycles;
+            // 校验通过时当前指纹与保存的指纹相同，无需再次计算
+            long boundaryHash = savedRoomBoundaryHash;
+            RoomShape restoredRoom = restoreSavedRoom(serverLevel, startPos);
+            if (restoredRoom != null) {
+                SharedRoom sharedRoom = registry.register(startPos, restoredRoom, boundaryHash);
+                sharedRoom.restoreSnowCycles(snowCycles);
+                joinRoom(sharedRoom, startPos);
+                return;
             }
+
+            // 完整检测分片执行，完成后再激活制冷
+            RoomDetectionJob job = RoomDetector.detectRoomTicked(serverLevel, startPos);
+            pendingDetection = job;
+            job.getFuture().whenComplete((detectedRoom, error) -> onRoomDetected(job, detectedRoom, snowCycles));
+        }
+    }
+
+    /**
+     * 分片检测完成时在服务器线程上调用
+     */
+    private void onRoomDetected(RoomDetectionJob job, RoomShape detectedRoom, int snowCycles) {
+        if (pendingDetection != job) {
+            return;
+        }
+        pendingDetection = null;
+
+        if (isRemoved() || !hasValidConnection || detectedRoom == null || detectedRoom.isEmpty()) {
+            return;
+        }
+
+        ServerLevel serverLevel = job.getLevel();
+        RoomRegistry registry = RoomRegistry.get(serverLevel);
+        // 检测期间其他空调可能已经注册了同一房间
+        SharedRoom sharedRoom = registry.getRoomAt(job.getStartPos());
+        if (sharedRoom == null) {
+            long boundaryHash = RoomValidator.boundaryHash(serverLevel, detectedRoom);
+            sharedRoom = registry.register(job.getStartPos(), detectedRoom, boundaryHash);
+            sharedRoom.markChanged(job.getChanges());
+            // 存档中的房间无法恢复时，积雪周期数仍然沿用
+            sharedRoom.restoreSnowCycles(snowCycles);
+        }
+        joinRoom(sharedRoom, job.getStartPos());
+    }
+
+    private void cancelDetection() {
+        if (pendingDetection != null) {
+            RoomDetectionJob job = pendingDetection;
+            pendingDetection = null;
+            job.cancel();
+        }
+    }
+
+    private void joinRoom(SharedRoom sharedRoom, BlockPos startPos) {
+        sharedRoom.addMember(this);
+        this.room = sharedRoom;
+        this.roomStartPos = startPos;
+        this.isCooling = true;
+        this.coolingStartTime = this.level.getGameTime();
+        this.setChanged();
+    }
+
+    private void leaveRoom() {
+        if (room != null) {
+            SharedRoom sharedRoom = room;
+            room = null;
+            roomStartPos = null;
+            sharedRoom.removeMember(this, chunkUnloading);
+        }
+    }
+
+    /**
+     * 检查NBT中恢复的房间是否对应当前检测起点
+     */
+    private boolean hasSavedRoomFor(BlockPos startPos) {
+        return savedRoom != null && startPos.equals(savedRoomStartPos) && savedRoom.contains(startPos);
+    }
+
+    /**
+     * 校验并取出NBT中恢复的房间
+     *
+     * @return 边界未发生变化时返回恢复的房间，否则返回null
+     */
+    private RoomShape restoreSavedRoom(ServerLevel serverLevel, BlockPos startPos) {
+        if (!hasSavedRoomFor(startPos)) {
+            discardSavedRoom();
+            return null;
+        }
+
+        RoomShape restored = savedRoom;
+        long expectedHash = savedRoomBoundaryHash;
+        boolean hashStale = savedRoomHashStale;
+        discardSavedRoom();
+
+        if (hashStale) {
+            // 指纹对应旧形状，无法确认边界未变化
+            ModernFurniture.LOGGER.debug("[房间检测] 保存的房间指纹已过期，重新检测: {}", worldPosition);
+            return null;
+        }
+
+        if (RoomValidator.boundaryHash(serverLevel, restored) != expectedHash) {
+            ModernFurniture.LOGGER.debug("[房间检测] 房间边界已变化，重新检测: {}", worldPosition);
+            return null;
+        }
+
+        ModernFurniture.LOGGER.debug("[房间检测] 从NBT恢复房间: {}方块", restored.size());
+        return restored;
+    }
+
+    @Override
+    public void onRoomChanged(SharedRoom sharedRoom) {
+        setChanged();
+    }
+
+    @Override
+    public void onRoomInvalidated(SharedRoom sharedRoom) {
+        if (room != sharedRoom) {
+            return;
         }
+
+        ModernFurniture.LOGGER.debug("[房间检测] 房间已失效，重新开始制冷: {}", worldPosition);
+        room = null;
+        roomStartPos = null;
+        isCooling = false;
+        coolingStartTime = 0;
+        startCooling();
+        setChanged();
+    }
+
+    private void discardSavedRoom() {
+        savedRoom = null;
+        savedRoomStartPos = null;
+        savedRoomBoundaryHash = 0;
+        savedRoomDeadline = -1;
+        savedRoomSnowCycles = 0;
+        savedRoomHashStale = false;
     }
 
     /**
@@ -74,38 +232,25 @@ public abstract class AbstractAirConditioningBlockEntity extends AbstractAnimata
     public void stopCooling() {
         isCooling = false;
         coolingStartTime = 0;
-        roomBlocks = null;
-
-        if (snowManager != null) {
-            try {
-                snowManager.shutdown();
-            } catch (Exception e) {
-                if (level instanceof ServerLevel) {
-                    ModernFurniture.LOGGER.warn("Failed to stop room blocks snow manager", e);
-                }
-            }
-            snowManager = null;
-        }
+        cancelDetection();
+        // 最后一台空调离开时房间的积雪才会开始融化
+        leaveRoom();
+        discardSavedRoom();
 
         setChanged();
     }
 
+    @Override
+    public void onChunkUnloaded() {
+        super.onChunkUnloaded();
+        chunkUnloading = true;
+    }
+
     @Override
     public void setRemoved() {
         super.setRemoved();
-
-        if (roomDetectionFuture != null && !roomDetectionFuture.isDone()) {
-            roomDetectionFuture.cancel(true);
-        }
-
-        if (snowManager != null) {
-            try {
-                snowManager.shutdown();
-            } catch (Exception e) {
-                // 忽略关闭异常
-            }
-            snowManager = null;
-        }
+        cancelDetection();
+        leaveRoom();
     }
 
     @Override
@@ -114,6 +259,25 @@ public abstract class AbstractAirConditioningBlockEntity extends AbstractAnimata
         tag.putBoolean("IsCooling", isCooling);
         tag.putLong("CoolingStartTime", coolingStartTime);
         tag.putBoolean("HasValidConnection", hasValidConnection);
+
+        // 保存时不读取世界，指纹由房间在世界刻中维护
+        if (isCooling && room != null) {
+            CompoundTag roomTag = saveRoom(room.getShape(), roomStartPos, room.getBoundaryHash(), room.isBoundaryHashStale());
+            roomTag.putInt("SnowCycles", room.getSnowCycles());
+            tag.put("Room", roomTag);
+        } else if (savedRoom != null) {
+            CompoundTag roomTag = saveRoom(savedRoom, savedRoomStartPos, savedRoomBoundaryHash, savedRoomHashStale);
+            roomTag.putInt("SnowCycles", savedRoomSnowCycles);
+            tag.put("Room", roomTag);
+        }
+    }
+
+    private static CompoundTag saveRoom(RoomShape shape, BlockPos startPos, long boundaryHash, boolean hashStale) {
+        CompoundTag roomTag = shape.save();
+        roomTag.putLong("StartPos", startPos.asLong());
+        roomTag.putLong("BoundaryHash", boundaryHash);
+        roomTag.putBoolean("HashStale", hashStale);
+        return roomTag;
     }
 
     @Override
@@ -123,20 +287,18 @@ public abstract class AbstractAirConditioningBlockEntity extends AbstractAnimata
         coolingStartTime = tag.getLong("CoolingStartTime");
         hasValidConnection = tag.getBoolean("HasValidConnection");
 
-        if (isCooling && hasValidConnection && this.level instanceof ServerLevel) {
-            roomDetectionFuture = RoomDetector.findRoomAsync(this.level, this.worldPosition)
-                    .thenAccept(blocks -> {
-                        if (this.level != null && !this.isRemoved()) {
-                            this.roomBlocks = blocks;
-
-                            if (SnowGenerationConfig.enableSnow && blocks != null && !blocks.isEmpty()) {
-                                this.snowManager = new SnowManager((ServerLevel) this.level, blocks);
-                            }
-
-                            this.setChanged();
-                        }
-                    })
-                    .exceptionally(throwable -> null);
+        // 只恢复房间数据，校验推迟到连接激活时进行，避免区块加载时集中执行洪水填充
+        discardSavedRoom();
+        if (isCooling && tag.contains("Room", Tag.TAG_COMPOUND)) {
+            CompoundTag roomTag = tag.getCompound("Room");
+            RoomShape shape = RoomShape.load(roomTag);
+            if (!shape.isEmpty()) {
+                savedRoom = shape;
+                savedRoomStartPos = BlockPos.of(roomTag.getLong("StartPos"));
+                savedRoomBoundaryHash = roomTag.getLong("BoundaryHash");
+                savedRoomSnowCycles = roomTag.getInt("SnowCycles");
+                savedRoomHashStale = roomTag.getBoolean("HashStale");
+            }
         }
     }
 
@@ -149,22 +311,17 @@ public abstract class AbstractAirConditioningBlockEntity extends AbstractAnimata
     }
 
     public void serverTick() {
-        if (this.level instanceof ServerLevel && this.isCooling && this.hasValidConnection && SnowGenerationConfig.enableSnow) {
-            if (snowManager != null) {
-                long currentTime = this.level.getGameTime();
-
-                try {
-                    if (snowManager.performSnowingAsync(currentTime)) {
-                        this.setChanged();
-                    }
-
-                    logPerformanceStats(currentTime);
-
-                } catch (Exception e) {
-                    ModernFurniture.LOGGER.warn("Failed to perform snow block entity", e);
-                }
+        if (savedRoomDeadline >= 0 && this.level instanceof ServerLevel serverLevel) {
+            if (serverLevel.getGameTime() >= savedRoomDeadline) {
+                discardSavedRoom();
+            }
+            if (savedRoom == null || RoomValidator.isBoundaryLoaded(serverLevel, savedRoom)) {
+                savedRoomDeadline = -1;
+                startCooling();
             }
         }
+
+        // 房间变化和降雪由RoomRegistry在世界刻中统一推进
     }
 
     private void checkInitialConnection(ServerLevel serverLevel) {
@@ -187,14 +344,6 @@ public abstract class AbstractAirConditioningBlockEntity extends AbstractAnimata
         }
     }
 
-    private void logPerformanceStats(long currentTime) {
-        if (currentTime - lastPerformanceLog > PERFORMANCE_LOG_INTERVAL) {
-            lastPerformanceLog = currentTime;
-            SnowStats stats = getSnowStats();
-            ModernFurniture.LOGGER.debug("降雪性能统计: {}", stats);
-        }
-    }
-
     @Override
     public void onConnectionActivated(Level level, BlockPos pos, BlockPos connectedPos) {
         hasValidConnection = true;
@@ -236,13 +385,12 @@ public abstract class AbstractAirConditioningBlockEntity extends AbstractAnimata
 
     // 调试方法
     public SnowStats getSnowStats() {
-        return snowManager != null ? snowManager.getSnowStats() : null;
+        return room != null ? room.getSnowStats() : null;
     }
 
     public void refreshSnowManager() {
-        if (snowManager != null && roomBlocks != null && !roomBlocks.isEmpty()) {
-            snowManager.shutdown();
-            snowManager = new SnowManager((ServerLevel) this.level, roomBlocks);
+        if (room != null) {
+            room.refreshSnowManager();
         }
     }
 
@@ -250,8 +398,22 @@ public abstract class AbstractAirConditioningBlockEntity extends AbstractAnimata
         return isCooling && hasValidConnection;
     }
 
+    public RoomShape getRoom() {
+        return room != null ? room.getShape() : null;
+    }
+
+    /**
+     * 房间方块的只读视图，没有房间时返回null
+     *
+     * @deprecated 使用{@link #getRoom()}获取紧凑的房间形状
+     */
+    @Deprecated
     public Set<BlockPos> getRoomBlocks() {
-        return roomBlocks;
+        return room != null ? room.getShape().asSet() : null;
+    }
+
+    public SharedRoom getSharedRoom() {
+        return room;
     }
 
     public boolean hasValidConnection() {
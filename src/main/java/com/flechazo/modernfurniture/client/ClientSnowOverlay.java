@@ -0,0 +1,82 @@
+package com.flechazo.modernfurniture.client;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 客户端积雪覆盖层数据
+ * 用于存储从服务端同步的房间积雪高度，由SnowOverlayRenderer绘制
+ */
+public class ClientSnowOverlay {
+    private static final Int2ObjectOpenHashMap<Long2ObjectOpenHashMap<Section>> rooms = new Int2ObjectOpenHashMap<>();
+    // 数据每次变化时递增，绘制端据此重建网格
+    private static int revision = 0;
+
+    /**
+     * 更新房间的积雪分区
+     *
+     * @param roomId      房间编号
+     * @param replaceAll  是否先丢弃房间的全部分区
+     * @param sectionKeys 分区坐标
+     * @param indices     每个分区内的积雪位置下标
+     * @param layers      每个位置的层数
+     */
+    public static void update(int roomId, boolean replaceAll, long[] sectionKeys, short[][] indices, byte[][] layers) {
+        Long2ObjectOpenHashMap<Section> sections = rooms.get(roomId);
+        if (sections == null) {
+            sections = new Long2ObjectOpenHashMap<>();
+            rooms.put(roomId, sections);
+        } else if (replaceAll) {
+            sections.clear();
+        }
+
+        for (int s = 0; s < sectionKeys.length; s++) {
+            if (indices[s].length == 0) {
+                sections.remove(sectionKeys[s]);
+            } else {
+                sections.put(sectionKeys[s], new Section(sectionKeys[s], indices[s], layers[s]));
+            }
+        }
+
+        if (sections.isEmpty()) {
+            rooms.remove(roomId);
+        }
+        revision++;
+    }
+
+    /**
+     * 获取所有房间的积雪分区
+     */
+    public static List<Section> getSections() {
+        List<Section> result = new ArrayList<>();
+        for (Long2ObjectOpenHashMap<Section> sections : rooms.values()) {
+            result.addAll(sections.values());
+        }
+        return result;
+    }
+
+    public static int getRevision() {
+        return revision;
+    }
+
+    /**
+     * 清除所有覆盖层
+     */
+    public static void clear() {
+        rooms.clear();
+        revision++;
+    }
+
+    /**
+     * 单个分区的积雪，每次更新都会创建新实例
+     *
+     * @param key     分区坐标
+     * @param indices 分区内下标（y << 8 | z << 4 | x）
+     * @param layers  对应位置的层数
+     */
+    public record Section(long key, short[] indices, byte[] layers) {
+    }
+}
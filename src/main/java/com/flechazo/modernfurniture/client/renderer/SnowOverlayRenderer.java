@@ -0,0 +1,214 @@
+package com.flechazo.modernfurniture.client.renderer;
+
+import com.flechazo.modernfurniture.ModernFurniture;
+import com.flechazo.modernfurniture.client.ClientSnowOverlay;
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
+import com.mojang.blaze3d.vertex.PoseStack;
+import com.mojang.blaze3d.vertex.VertexBuffer;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.client.renderer.LevelRenderer;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.ShaderInstance;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.phys.Vec3;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.client.event.RenderLevelStageEvent;
+import net.minecraftforge.event.level.LevelEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 积雪覆盖层渲染器
+ *
+ * <p>把服务端同步的积雪高度绘制成与积雪方块外观相同的网格，世界本身不包含积雪方块。</p>
+ *
+ * <h2>批量绘制</h2>
+ * <ul>
+ *   <li>每个分区一个静态顶点缓冲，只在该分区数据变化时重建</li>
+ *   <li>只绘制顶面与高于相邻积雪的侧面</li>
+ *   <li>光照在建网格时读取，昼夜变化由光照贴图处理</li>
+ * </ul>
+ */
+@Mod.EventBusSubscriber(modid = ModernFurniture.MODID, value = Dist.CLIENT)
+public class SnowOverlayRenderer {
+    private static final Map<ClientSnowOverlay.Section, VertexBuffer> meshes = new IdentityHashMap<>();
+    private static final BufferBuilder builder = new BufferBuilder(262144);
+    private static int revision = -1;
+
+    @SubscribeEvent
+    public static void onRenderLevelStage(RenderLevelStageEvent event) {
+        if (event.getStage() != RenderLevelStageEvent.Stage.AFTER_SOLID_BLOCKS) {
+            return;
+        }
+
+        ClientLevel level = Minecraft.getInstance().level;
+        if (level == null) {
+            return;
+        }
+        if (revision != ClientSnowOverlay.getRevision()) {
+            revision = ClientSnowOverlay.getRevision();
+            rebuild(level);
+        }
+        if (meshes.isEmpty()) {
+            return;
+        }
+
+        Vec3 camera = event.getCamera().getPosition();
+        PoseStack poseStack = event.getPoseStack();
+        RenderType renderType = RenderType.solid();
+        renderType.setupRenderState();
+        ShaderInstance shader = RenderSystem.getShader();
+
+        for (Map.Entry<ClientSnowOverlay.Section, VertexBuffer> entry : meshes.entrySet()) {
+            long key = entry.getKey().key();
+            poseStack.pushPose();
+            poseStack.translate(
+                    SectionPos.sectionToBlockCoord(SectionPos.x(key)) - camera.x,
+                    SectionPos.sectionToBlockCoord(SectionPos.y(key)) - camera.y,
+                    SectionPos.sectionToBlockCoord(SectionPos.z(key)) - camera.z);
+            VertexBuffer buffer = entry.getValue();
+            buffer.bind();
+            buffer.drawWithShader(poseStack.last().pose(), event.getProjectionMatrix(), shader);
+            poseStack.popPose();
+        }
+
+        VertexBuffer.unbind();
+        renderType.clearRenderState();
+    }
+
+    @SubscribeEvent
+    public static void onLevelUnload(LevelEvent.Unload event) {
+        if (event.getLevel().isClientSide()) {
+            ClientSnowOverlay.clear();
+            meshes.values().forEach(VertexBuffer::close);
+            meshes.clear();
+        }
+    }
+
+    /**
+     * 释放已移除分区的网格，为新分区建网格
+     */
+    private static void rebuild(ClientLevel level) {
+        List<ClientSnowOverlay.Section> sections = ClientSnowOverlay.getSections();
+        Set<ClientSnowOverlay.Section> current = Collections.newSetFromMap(new IdentityHashMap<>());
+        current.addAll(sections);
+
+        Iterator<Map.Entry<ClientSnowOverlay.Section, VertexBuffer>> iterator = meshes.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<ClientSnowOverlay.Section, VertexBuffer> entry = iterator.next();
+            if (!current.contains(entry.getKey())) {
+                entry.getValue().close();
+                iterator.remove();
+            }
+        }
+
+        TextureAtlasSprite sprite = Minecraft.getInstance().getBlockRenderer().getBlockModelShaper()
+                .getParticleIcon(Blocks.SNOW.defaultBlockState());
+        for (ClientSnowOverlay.Section section : sections) {
+            if (!meshes.containsKey(section)) {
+                meshes.put(section, buildMesh(level, section, sprite));
+            }
+        }
+    }
+
+    private static VertexBuffer buildMesh(ClientLevel level, ClientSnowOverlay.Section section, TextureAtlasSprite sprite) {
+        int originX = SectionPos.sectionToBlockCoord(SectionPos.x(section.key()));
+        int originY = SectionPos.sectionToBlockCoord(SectionPos.y(section.key()));
+        int originZ = SectionPos.sectionToBlockCoord(SectionPos.z(section.key()));
+
+        // 分区内每个位置的层数，用于剔除被相邻积雪挡住的侧面
+        byte[] heights = new byte[4096];
+        for (int i = 0; i < section.indices().length; i++) {
+            heights[section.indices()[i] & 4095] = section.layers()[i];
+        }
+
+        BlockPos.MutableBlockPos cursor = new BlockPos.MutableBlockPos();
+        builder.begin(VertexFormat.Mode.QUADS, DefaultVertexFormat.BLOCK);
+        for (int i = 0; i < section.indices().length; i++) {
+            int index = section.indices()[i] & 4095;
+            int layers = section.layers()[i];
+            if (layers <= 0) {
+                continue;
+            }
+
+            int x = index & 15;
+            int y = index >> 8 & 15;
+            int z = index >> 4 & 15;
+            float top = layers / 8.0f;
+            int light = LevelRenderer.getLightColor(level, cursor.set(originX + x, originY + y, originZ + z));
+
+            float u0 = sprite.getU0(), u1 = sprite.getU1(), v0 = sprite.getV0(), v1 = sprite.getV1();
+            vertex(x, y + top, z, 1.0f, u0, v0, light, 0, 1, 0);
+            vertex(x, y + top, z + 1, 1.0f, u0, v1, light, 0, 1, 0);
+            vertex(x + 1, y + top, z + 1, 1.0f, u1, v1, light, 0, 1, 0);
+            vertex(x + 1, y + top, z, 1.0f, u1, v0, light, 0, 1, 0);
+
+            float north = neighborTop(heights, x, y, z - 1);
+            if (north < top) {
+                float va = sprite.getV(16 - top * 16), vb = sprite.getV(16 - north * 16);
+                vertex(x + 1, y + top, z, 0.8f, u0, va, light, 0, 0, -1);
+                vertex(x + 1, y + north, z, 0.8f, u0, vb, light, 0, 0, -1);
+                vertex(x, y + north, z, 0.8f, u1, vb, light, 0, 0, -1);
+                vertex(x, y + top, z, 0.8f, u1, va, light, 0, 0, -1);
+            }
+            float south = neighborTop(heights, x, y, z + 1);
+            if (south < top) {
+                float va = sprite.getV(16 - top * 16), vb = sprite.getV(16 - south * 16);
+                vertex(x, y + top, z + 1, 0.8f, u0, va, light, 0, 0, 1);
+                vertex(x, y + south, z + 1, 0.8f, u0, vb, light, 0, 0, 1);
+                vertex(x + 1, y + south, z + 1, 0.8f, u1, vb, light, 0, 0, 1);
+                vertex(x + 1, y + top, z + 1, 0.8f, u1, va, light, 0, 0, 1);
+            }
+            float west = neighborTop(heights, x - 1, y, z);
+            if (west < top) {
+                float va = sprite.getV(16 - top * 16), vb = sprite.getV(16 - west * 16);
+                vertex(x, y + top, z, 0.6f, u0, va, light, -1, 0, 0);
+                vertex(x, y + west, z, 0.6f, u0, vb, light, -1, 0, 0);
+                vertex(x, y + west, z + 1, 0.6f, u1, vb, light, -1, 0, 0);
+                vertex(x, y + top, z + 1, 0.6f, u1, va, light, -1, 0, 0);
+            }
+            float east = neighborTop(heights, x + 1, y, z);
+            if (east < top) {
+                float va = sprite.getV(16 - top * 16), vb = sprite.getV(16 - east * 16);
+                vertex(x + 1, y + top, z + 1, 0.6f, u0, va, light, 1, 0, 0);
+                vertex(x + 1, y + east, z + 1, 0.6f, u0, vb, light, 1, 0, 0);
+                vertex(x + 1, y + east, z, 0.6f, u1, vb, light, 1, 0, 0);
+                vertex(x + 1, y + top, z, 0.6f, u1, va, light, 1, 0, 0);
+            }
+        }
+
+        VertexBuffer buffer = new VertexBuffer(VertexBuffer.Usage.STATIC);
+        buffer.bind();
+        buffer.upload(builder.end());
+        VertexBuffer.unbind();
+        return buffer;
+    }
+
+    /**
+     * 相邻位置的积雪高度，分区外视为没有积雪
+     */
+    private static float neighborTop(byte[] heights, int x, int y, int z) {
+        if ((x | z) >>> 4 != 0) {
+            return 0;
+        }
+        return heights[y << 8 | z << 4 | x] / 8.0f;
+    }
+
+    private static void vertex(float x, float y, float z, float shade, float u, float v, int light, float nx, float ny, float nz) {
+        builder.vertex(x, y, z).color(shade, shade, shade, 1.0f).uv(u, v).uv2(light).normal(nx, ny, nz).endVertex();
+    }
+}
@@ -14,6 +14,14 @@ public class RoomDetectionConfig implements ConfigModule {
     @ConfigInfo(name = "maxSearchTimeMs", comment = "房间检测的最大耗时（毫秒）")
     @RangeFlag(min = "10", max = "1000")
     public static long maxSearchTimeMs = 100;
+    @ConfigInfo(name = "sectionNativeDetection", comment = "是否按区块分区直接读取方块调色板进行房间检测（更快，关闭则逐方块查询世界）")
+    public static boolean sectionNativeDetection = true;
+    @ConfigInfo(name = "detectionBudgetMicros", comment = "每刻用于房间检测的时间预算（微秒），由所有等待中的检测共享")
+    @RangeFlag(min = "100", max = "50000")
+    public static int detectionBudgetMicros = 2000;
+    @ConfigInfo(name = "parallelDetectionThreshold", comment = "房间体积达到该值时切换为按分区并行检测（0=禁用）")
+    @RangeFlag(min = "0", max = "100000")
+    public static int parallelDetectionThreshold = 20000;
 
     @Override
     public String name() {
@@ -22,6 +22,29 @@ public class SnowGenerationConfig implements ConfigModule {
     @ConfigInfo(name = "snowCoverageRatio", comment = "积雪覆盖的方块比例房间最大积雪覆盖率")
     @RangeFlag(min = "0", max = "1")
     public static double snowCoverageRatio = 0.7;
+    @ConfigInfo(name = "snowWorkerThreads", comment = "每个世界用于降雪计算的工作线程数")
+    @RangeFlag(min = "1", max = "8")
+    public static int snowWorkerThreads = 2;
+    @ConfigInfo(name = "snowWritesPerTick", comment = "全服每刻最多写入的积雪方块数量，由所有房间分摊")
+    @RangeFlag(min = "1", max = "10000")
+    public static int snowWritesPerTick = 256;
+    @ConfigInfo(name = "snowBudgetMicros", comment = "全服每刻写入积雪的时间预算（微秒）")
+    @RangeFlag(min = "100", max = "50000")
+    public static int snowBudgetMicros = 2000;
+    @ConfigInfo(name = "snowMeltPerTick", comment = "停止制冷后每个世界每刻最多融化的积雪层数")
+    @RangeFlag(min = "1", max = "10000")
+    public static int snowMeltPerTick = 128;
+    @ConfigInfo(name = "snowParkTimeout", comment = "房间卸载后留下的积雪在区块加载期间无房间领回的最长时间（秒），超时后逐层融化")
+    @RangeFlag(min = "10", max = "86400")
+    public static int snowParkTimeout = 300;
+    @ConfigInfo(name = "snowFullDistance", comment = "玩家在此距离（方块）内时完整模拟房间积雪")
+    @RangeFlag(min = "16", max = "512")
+    public static int snowFullDistance = 64;
+    @ConfigInfo(name = "snowVirtualDistance", comment = "玩家在此距离（方块）内时只累计积雪周期，靠近后一次性补齐；更远时积雪暂停")
+    @RangeFlag(min = "16", max = "4096")
+    public static int snowVirtualDistance = 256;
+    @ConfigInfo(name = "snowOverlayMode", comment = "只在客户端绘制积雪，不修改世界方块（新建的房间生效）")
+    public static boolean snowOverlayMode = false;
 
     @Override
     public String name() {
@@ -32,5 +32,8 @@ public class DataGenerators {
                         LootContextParamSets.BLOCK
                 ))
         ));
+        generator.addProvider(event.includeServer(), new ModBlockTagsProvider(
+                packOutput, lookupProvider, existingFileHelper
+        ));
     }
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package com.flechazo.modernfurniture.data;
+
+import com.flechazo.modernfurniture.ModernFurniture;
+import com.flechazo.modernfurniture.util.room.PassabilityTable;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.data.PackOutput;
+import net.minecraftforge.common.data.BlockTagsProvider;
+import net.minecraftforge.common.data.ExistingFileHelper;
+
+import java.util.concurrent.CompletableFuture;
+
+public class ModBlockTagsProvider extends BlockTagsProvider {
+    public ModBlockTagsProvider(PackOutput output, CompletableFuture<HolderLookup.Provider> lookupProvider,
+                                ExistingFileHelper existingFileHelper) {
+        super(output, lookupProvider, ModernFurniture.MODID, existingFileHelper);
+    }
+
+    @Override
+    protected void addTags(HolderLookup.Provider provider) {
+        // 默认为空，整合包通过数据包追加
+        this.tag(PassabilityTable.ROOM_PASSABLE);
+    }
+}
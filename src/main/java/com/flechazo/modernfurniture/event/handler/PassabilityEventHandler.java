@@ -0,0 +1,14 @@
+package com.flechazo.modernfurniture.event.handler;
+
+import com.flechazo.modernfurniture.util.room.PassabilityTable;
+import net.minecraftforge.event.TagsUpdatedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+
+public class PassabilityEventHandler {
+
+    @SubscribeEvent
+    public static void onTagsUpdated(TagsUpdatedEvent event) {
+        // 房间可通过标签可能已变化
+        PassabilityTable.rebuild();
+    }
+}
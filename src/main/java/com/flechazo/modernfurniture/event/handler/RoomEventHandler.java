@@ -0,0 +1,34 @@
+package com.flechazo.modernfurniture.event.handler;
+
+import com.flechazo.modernfurniture.util.room.RoomDetectionScheduler;
+import com.flechazo.modernfurniture.util.room.RoomModel;
+import com.flechazo.modernfurniture.util.room.RoomRegistry;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+
+/**
+ * 房间事件处理器
+ *
+ * <p>接收已加载区块中的每一次方块状态变化，通过{@link RoomRegistry}的分区索引找到受影响的房间，
+ * 将变化位置交给对应的{@link RoomModel}进行增量更新。</p>
+ *
+ * <h2>主要功能</h2>
+ * <ul>
+ *   <li>由LevelChunk#setBlockState的注入调用，覆盖门的开关、活塞、爆炸和流体</li>
+ *   <li>只查询变化位置所在及相邻的分区，与房间数量无关</li>
+ *   <li>同时记录到进行中的检测任务，排队等待服务器刻中统一处理</li>
+ * </ul>
+ */
+public class RoomEventHandler {
+
+    /**
+     * 处理方块状态变化
+     *
+     * @param level 服务器世界
+     * @param pos   发生变化的位置，可能是可变坐标
+     */
+    public static void onBlockChanged(ServerLevel level, BlockPos pos) {
+        RoomDetectionScheduler.onBlockChanged(level, pos);
+        RoomRegistry.onBlockChanged(level, pos);
+    }
+}
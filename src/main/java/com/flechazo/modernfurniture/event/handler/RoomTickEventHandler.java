@@ -0,0 +1,42 @@
+package com.flechazo.modernfurniture.event.handler;
+
+import com.flechazo.modernfurniture.util.room.RoomDetectionScheduler;
+import com.flechazo.modernfurniture.util.room.RoomRegistry;
+import com.flechazo.modernfurniture.util.snow.SnowBudget;
+import com.flechazo.modernfurniture.util.snow.SnowRoomIndex;
+import com.flechazo.modernfurniture.util.snow.SnowSavedData;
+import com.flechazo.modernfurniture.util.snow.SnowService;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.level.LevelEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+
+public class RoomTickEventHandler {
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase == TickEvent.Phase.END) {
+            RoomDetectionScheduler.tick();
+            SnowBudget.tick();
+        }
+    }
+
+    @SubscribeEvent
+    public static void onLevelTick(TickEvent.LevelTickEvent event) {
+        if (event.phase == TickEvent.Phase.END && event.level instanceof ServerLevel serverLevel) {
+            RoomRegistry.tick(serverLevel);
+            SnowSavedData.tick(serverLevel);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onLevelUnload(LevelEvent.Unload event) {
+        if (event.getLevel() instanceof ServerLevel serverLevel) {
+            RoomDetectionScheduler.cancelAll(serverLevel);
+            RoomRegistry.unload(serverLevel);
+            // 房间释放积雪管理器时仍会从索引中注销，索引必须在注册表之后清除
+            SnowRoomIndex.unload(serverLevel);
+            SnowService.unload(serverLevel);
+        }
+    }
+}
@@ -1,92 +1,44 @@
 package com.flechazo.modernfurniture.event.handler;
 
-import com.flechazo.modernfurniture.util.snow.SnowCacheManager;
+import com.flechazo.modernfurniture.util.snow.SnowRoomIndex;
+import com.flechazo.modernfurniture.util.snow.SnowSavedData;
 import net.minecraft.core.BlockPos;
 import net.minecraft.server.level.ServerLevel;
-import net.minecraftforge.common.MinecraftForge;
-import net.minecraftforge.event.level.BlockEvent;
-import net.minecraftforge.eventbus.api.SubscribeEvent;
-
-import java.util.Set;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
 
 /**
  * 积雪事件处理器
  *
- * <p>监听方块变化事件，触发相应的缓存失效和状态更新。</p>
+ * <p>接收已加载区块中的方块状态变化，通过{@link SnowRoomIndex}只通知附近房间的积雪管理器，
+ * 触发相应的缓存失效和状态更新。</p>
  *
  * <h2>主要功能</h2>
  * <ul>
- *   <li>监听方块放置/破坏事件</li>
- *   <li>触发缓存失效</li>
- *   <li>维护积雪状态一致性</li>
+ *   <li>由LevelChunk#setBlockState的注入调用，此时方块已经变化</li>
+ *   <li>忽略同一方块的属性变化（例如草方块的积雪状态），积雪层数的变化除外</li>
+ *   <li>按分区索引分发给受影响的房间，触发缓存失效</li>
+ *   <li>标记覆盖率计数的变化位置，更新地面索引</li>
+ *   <li>积雪被破坏或替换时移除运行中与暂存的积雪记录</li>
  * </ul>
  */
 public class SnowEventHandler {
-    private final ServerLevel level;
-    private final Set<BlockPos> roomBlocks;
-    private final SnowCacheManager cacheManager;
-
-    /**
-     * 构造事件处理器
-     *
-     * @param level        服务器世界
-     * @param roomBlocks   房间方块集合
-     * @param cacheManager 缓存管理器
-     */
-    public SnowEventHandler(ServerLevel level, Set<BlockPos> roomBlocks, SnowCacheManager cacheManager) {
-        this.level = level;
-        this.roomBlocks = roomBlocks;
-        this.cacheManager = cacheManager;
-
-        // 注册事件监听器
-        MinecraftForge.EVENT_BUS.register(this);
-    }
 
     /**
-     * 处理方块放置事件
+     * 处理方块状态变化
      *
-     * @param event 方块放置事件
+     * @param level    服务器世界
+     * @param pos      发生变化的位置，可能是可变坐标
+     * @param previous 变化前的状态
+     * @param state    变化后的状态
      */
-    @SubscribeEvent
-    public void onBlockPlace(BlockEvent.EntityPlaceEvent event) {
-        if (event.getLevel() == level) {
-            BlockPos pos = event.getPos();
-            if (isInRoomArea(pos)) {
-                cacheManager.scheduleInvalidation(pos, "block_place");
+    public static void onBlockChanged(ServerLevel level, BlockPos pos, BlockState previous, BlockState state) {
+        if (previous.getBlock() != state.getBlock() || previous.getBlock() == Blocks.SNOW) {
+            BlockPos immutable = pos.immutable();
+            SnowRoomIndex.dispatch(level, immutable, "block_change");
+            if (previous.getBlock() == Blocks.SNOW) {
+                SnowSavedData.onSnowChanged(level, immutable, state);
             }
         }
     }
-
-    /**
-     * 处理方块破坏事件
-     *
-     * @param event 方块破坏事件
-     */
-    @SubscribeEvent
-    public void onBlockBreak(BlockEvent.BreakEvent event) {
-        if (event.getLevel() == level) {
-            BlockPos pos = event.getPos();
-            if (isInRoomArea(pos)) {
-                cacheManager.scheduleInvalidation(pos, "block_break");
-            }
-        }
-    }
-
-    /**
-     * 关闭事件处理器
-     */
-    public void shutdown() {
-        MinecraftForge.EVENT_BUS.unregister(this);
-    }
-
-    /**
-     * 检查位置是否在房间区域内
-     *
-     * @param pos 位置
-     * @return 是否在房间区域内
-     */
-    private boolean isInRoomArea(BlockPos pos) {
-        return roomBlocks.contains(pos) ||
-                roomBlocks.stream().anyMatch(roomPos -> roomPos.distSqr(pos) <= 9); // 3格范围内
-    }
-}
\ No newline at end of file
+}
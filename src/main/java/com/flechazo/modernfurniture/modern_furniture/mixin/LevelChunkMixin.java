@@ -0,0 +1,38 @@
+package com.flechazo.modernfurniture.modern_furniture.mixin;
+
+import com.flechazo.modernfurniture.event.handler.RoomEventHandler;
+import com.flechazo.modernfurniture.event.handler.SnowEventHandler;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+/**
+ * 在区块写入方块状态后通知房间与积雪
+ *
+ * <p>Forge的方块事件只覆盖玩家放置和破坏，门的开关、活塞、爆炸和流体都直接调用setBlock，
+ * 且开门等操作不会触发邻居更新事件。所有已加载区块的方块变化最终都经过这里。</p>
+ */
+@Mixin(LevelChunk.class)
+public abstract class LevelChunkMixin {
+    @Shadow
+    @Final
+    Level level;
+
+    @Inject(method = "setBlockState", at = @At("RETURN"))
+    private void modern_furniture$onSetBlockState(BlockPos pos, BlockState state, boolean isMoving, CallbackInfoReturnable<BlockState> cir) {
+        // 返回null表示状态没有变化；房间与积雪数据只能在服务器线程上访问
+        BlockState previous = cir.getReturnValue();
+        if (previous != null && level instanceof ServerLevel serverLevel && serverLevel.getServer().isSameThread()) {
+            RoomEventHandler.onBlockChanged(serverLevel, pos);
+            SnowEventHandler.onBlockChanged(serverLevel, pos, previous, state);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.flechazo.modernfurniture.network;
 
 import com.flechazo.modernfurniture.network.module.ConfigPacket;
+import com.flechazo.modernfurniture.network.module.SnowOverlayPacket;
 import com.flechazo.modernfurniture.network.module.WireSyncPacket;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraftforge.eventbus.api.IEventBus;
@@ -30,6 +31,12 @@ public class NetworkHandler {
                         return packet;
                     },
                     WireSyncPacket::handle);
+            registerPacket(SnowOverlayPacket.class, SnowOverlayPacket::encode, buf -> {
+                        SnowOverlayPacket packet = new SnowOverlayPacket();
+                        packet.decode(buf);
+                        return packet;
+                    },
+                    SnowOverlayPacket::handle);
         }
     };
 
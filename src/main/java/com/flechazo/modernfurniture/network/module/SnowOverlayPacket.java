@@ -0,0 +1,107 @@
+package com.flechazo.modernfurniture.network.module;
+
+import com.flechazo.modernfurniture.ModernFurniture;
+import com.flechazo.modernfurniture.client.ClientSnowOverlay;
+import com.flechazo.modernfurniture.network.PacketHandler;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraftforge.network.NetworkEvent;
+
+import java.util.function.Supplier;
+
+/**
+ * 积雪覆盖层同步包
+ *
+ * <p>按分区发送房间的积雪高度：每个积雪位置一个分区内下标（2字节）和4位层数，
+ * 两个位置的层数共用一个字节。没有位置的分区表示该分区的积雪已全部移除。</p>
+ */
+public class SnowOverlayPacket extends PacketHandler.AbstractPacket {
+    private int roomId;
+    // 为true时客户端先丢弃该房间的全部分区
+    private boolean replaceAll;
+    private long[] sectionKeys;
+    private short[][] indices;
+    private byte[][] layers;
+
+    public SnowOverlayPacket() {
+    }
+
+    public SnowOverlayPacket(int roomId, boolean replaceAll, long[] sectionKeys, short[][] indices, byte[][] layers) {
+        this.roomId = roomId;
+        this.replaceAll = replaceAll;
+        this.sectionKeys = sectionKeys;
+        this.indices = indices;
+        this.layers = layers;
+    }
+
+    /**
+     * 创建移除整个房间覆盖层的包
+     */
+    public static SnowOverlayPacket remove(int roomId) {
+        return new SnowOverlayPacket(roomId, true, new long[0], new short[0][], new byte[0][]);
+    }
+
+    @Override
+    public void encode(FriendlyByteBuf buffer) {
+        buffer.writeVarInt(roomId);
+        buffer.writeBoolean(replaceAll);
+        buffer.writeVarInt(sectionKeys.length);
+
+        for (int s = 0; s < sectionKeys.length; s++) {
+            short[] sectionIndices = indices[s];
+            byte[] sectionLayers = layers[s];
+            buffer.writeLong(sectionKeys[s]);
+            buffer.writeVarInt(sectionIndices.length);
+            for (short index : sectionIndices) {
+                buffer.writeShort(index);
+            }
+            for (int i = 0; i < sectionLayers.length; i += 2) {
+                int high = i + 1 < sectionLayers.length ? sectionLayers[i + 1] : 0;
+                buffer.writeByte((sectionLayers[i] & 15) | (high & 15) << 4);
+            }
+        }
+    }
+
+    @Override
+    public void decode(FriendlyByteBuf buffer) {
+        roomId = buffer.readVarInt();
+        replaceAll = buffer.readBoolean();
+        int sectionCount = buffer.readVarInt();
+
+        sectionKeys = new long[sectionCount];
+        indices = new short[sectionCount][];
+        layers = new byte[sectionCount][];
+        for (int s = 0; s < sectionCount; s++) {
+            sectionKeys[s] = buffer.readLong();
+            int count = buffer.readVarInt();
+            short[] sectionIndices = new short[count];
+            byte[] sectionLayers = new byte[count];
+            for (int i = 0; i < count; i++) {
+                sectionIndices[i] = buffer.readShort();
+            }
+            for (int i = 0; i < count; i += 2) {
+                int packed = buffer.readUnsignedByte();
+                sectionLayers[i] = (byte) (packed & 15);
+                if (i + 1 < count) {
+                    sectionLayers[i + 1] = (byte) (packed >> 4);
+                }
+            }
+            indices[s] = sectionIndices;
+            layers[s] = sectionLayers;
+        }
+    }
+
+    @Override
+    public void handle(Supplier<NetworkEvent.Context> contextSupplier) {
+        NetworkEvent.Context context = contextSupplier.get();
+        context.enqueueWork(() -> {
+            try {
+                if (context.getDirection().getReceptionSide().isClient()) {
+                    ClientSnowOverlay.update(roomId, replaceAll, sectionKeys, indices, layers);
+                }
+            } catch (Exception e) {
+                ModernFurniture.LOGGER.error("Failed to handle snow overlay packet: {}", e.getMessage());
+            }
+        });
+        context.setPacketHandled(true);
+    }
+}
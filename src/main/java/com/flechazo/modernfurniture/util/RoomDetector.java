@@ -1,15 +1,19 @@
 package com.flechazo.modernfurniture.util;
 
-import com.flechazo.modernfurniture.ModernFurniture;
 import com.flechazo.modernfurniture.config.module.RoomDetectionConfig;
+import com.flechazo.modernfurniture.util.room.RoomDetectionJob;
+import com.flechazo.modernfurniture.util.room.RoomDetectionScheduler;
+import com.flechazo.modernfurniture.util.room.LevelSnapshot;
+import com.flechazo.modernfurniture.util.room.ParallelRoomFloodFill;
+import com.flechazo.modernfurniture.util.room.PassabilityTable;
+import com.flechazo.modernfurniture.util.room.RoomFloodFill;
+import com.flechazo.modernfurniture.util.room.RoomShape;
 import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.state.BlockState;
-import net.minecraft.world.level.block.state.properties.BlockStateProperties;
 
-import java.util.ArrayDeque;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
@@ -33,7 +37,8 @@ import java.util.concurrent.CompletableFuture;
  * <ul>
  *   <li><b>超时中断：</b>默认最长处理时间限制(maxSearchTimeMs)</li>
  *   <li><b>体积限制：</b>最大房间尺寸限制(maxRoomSize)</li>
- *   <li><b>批量处理：</b>每处理1000方块执行一次条件检查</li>
+ *   <li><b>批量处理：</b>每处理256方块执行一次条件检查</li>
+ *   <li><b>并行升级：</b>大型房间切换为{@link ParallelRoomFloodFill}按分区并行检测(parallelDetectionThreshold)</li>
  * </ul>
  *
  * <h3>3. 通过性判定逻辑</h3>
@@ -42,30 +47,32 @@ import java.util.concurrent.CompletableFuture;
  *   <li><b>基础检测：</b>空气方块自动通过</li>
  *   <li><b>流体检测：</b>含流体方块视为可通过</li>
  *   <li><b>特殊属性：</b>支持OPEN属性方块的动态判定</li>
+ *   <li><b>标签扩展：</b>modern_furniture:room_passable标签中的方块视为可通过</li>
  * </ul>
+ * <p>判定结果由{@link PassabilityTable}按方块状态ID预计算，每次查询只需一次数组读取。</p>
  *
  * <h2>算法实现细节</h2>
  *
  * <h3>1. 搜索流程</h3>
  * <ol>
- *   <li>初始化双端队列(ArrayDeque)和已访问集合(HashSet)</li>
+ *   <li>由{@link RoomFloodFill}初始化打包坐标队列和分区位图</li>
  *   <li>从起始点向6个方向扩展搜索</li>
  *   <li>使用visit标记防止重复处理</li>
  * </ol>
  *
  * <h3>2. 内存优化</h3>
- * <p>预设集合初始容量减少扩容开销：</p>
+ * <p>搜索过程中不创建BlockPos对象：</p>
  * <ul>
- *   <li>visited集合初始8192容量</li>
- *   <li>queue队列初始1024容量</li>
- *   <li>roomBlocks集合初始8192容量</li>
+ *   <li>队列使用LongArrayFIFOQueue存储打包坐标</li>
+ *   <li>已访问集合与房间方块均为按分区懒分配的4096位掩码</li>
+ *   <li>结果以{@link RoomShape}返回，findRoom仅提供集合视图</li>
  * </ul>
  *
- * <h3>3. 异步支持</h3>
- * <p>通过CompletableFuture提供非阻塞调用：</p>
+ * <h3>3. 非阻塞执行</h3>
+ * <p>两种方式均不会在工作线程中读取世界：</p>
  * <ul>
- *   <li>findRoomAsync方法实现异步执行</li>
- *   <li>与主线程搜索逻辑保持相同约束条件</li>
+ *   <li>detectRoomTicked通过{@link RoomDetectionScheduler}在服务器线程上按每刻预算分片执行</li>
+ *   <li>detectRoomAsync与findRoomAsync先在调用线程复制{@link LevelSnapshot}，再在线程池中搜索快照</li>
  * </ul>
  *
  * @author flechazo
@@ -81,92 +88,36 @@ public class RoomDetector {
      *
      * @param level    目标世界对象
      * @param startPos 检测起始坐标
-     * @return 包含所有可通过方块的集合，若失败返回空集合
-     * @implNote 典型处理时间与房间体积成正比，10,000方块约需50-100ms
+     * @return 包含所有可通过方块的只读集合视图，若失败返回空集合
+     * @implNote 仅为兼容旧接口的适配层，新代码应直接使用{@link #detectRoom}
      */
     public static Set<BlockPos> findRoom(Level level, BlockPos startPos) {
-        long startTime = System.currentTimeMillis();
-
-        Set<BlockPos> visited = new HashSet<>(8192);
-        ArrayDeque<BlockPos> queue = new ArrayDeque<>(1024);
-        Set<BlockPos> roomBlocks = new HashSet<>(8192);
-
-        if (!isPassable(level, startPos)) {
-            return Collections.emptySet();
-        }
-
-        final int maxRadius = RoomDetectionConfig.maxSearchDistance;
-        final int maxVolume = RoomDetectionConfig.maxRoomSize;
-        final long maxTime = RoomDetectionConfig.maxSearchTimeMs;
-
-        final int minX = startPos.getX() - maxRadius;
-        final int maxX = startPos.getX() + maxRadius;
-        final int minY = Math.max(level.getMinBuildHeight(), startPos.getY() - maxRadius);
-        final int maxY = Math.min(level.getMaxBuildHeight(), startPos.getY() + maxRadius);
-        final int minZ = startPos.getZ() - maxRadius;
-        final int maxZ = startPos.getZ() + maxRadius;
-
-        queue.offer(startPos);
-        visited.add(startPos);
-        roomBlocks.add(startPos);
-
-        int processed = 0;
-
-        while (!queue.isEmpty()) {
-            if (++processed % 1000 == 0) {
-                if (System.currentTimeMillis() - startTime > maxTime) {
-                    ModernFurniture.LOGGER.debug("[房间检测] 超时: {}方块, {}ms", processed, System.currentTimeMillis() - startTime);
-                    return Collections.emptySet();
-                }
-                if (roomBlocks.size() >= maxVolume) {
-                    ModernFurniture.LOGGER.debug("[房间检测] 体积过大: {}方块, {}ms", roomBlocks.size(), System.currentTimeMillis() - startTime);
-                    return Collections.emptySet();
-                }
-            }
-
-            BlockPos current = queue.poll();
-            int x = current.getX();
-            int y = current.getY();
-            int z = current.getZ();
-
-            checkAndAdd(level, new BlockPos(x, y + 1, z), visited, queue, roomBlocks, minX, maxX, minY, maxY, minZ, maxZ);
-            checkAndAdd(level, new BlockPos(x, y - 1, z), visited, queue, roomBlocks, minX, maxX, minY, maxY, minZ, maxZ);
-            checkAndAdd(level, new BlockPos(x + 1, y, z), visited, queue, roomBlocks, minX, maxX, minY, maxY, minZ, maxZ);
-            checkAndAdd(level, new BlockPos(x - 1, y, z), visited, queue, roomBlocks, minX, maxX, minY, maxY, minZ, maxZ);
-            checkAndAdd(level, new BlockPos(x, y, z + 1), visited, queue, roomBlocks, minX, maxX, minY, maxY, minZ, maxZ);
-            checkAndAdd(level, new BlockPos(x, y, z - 1), visited, queue, roomBlocks, minX, maxX, minY, maxY, minZ, maxZ);
-        }
-
-        long elapsed = System.currentTimeMillis() - startTime;
-        ModernFurniture.LOGGER.debug("[房间检测] 完成: {}方块, {}ms", roomBlocks.size(), elapsed);
-
-        return roomBlocks;
+        RoomShape shape = detectRoom(level, startPos);
+        return shape.isEmpty() ? Collections.emptySet() : shape.asSet();
     }
 
     /**
-     * 检查并添加相邻方块到队列
+     * 执行封闭空间检测并返回紧凑房间形状
+     *
+     * @param level    目标世界对象
+     * @param startPos 检测起始坐标
+     * @return 房间形状，若失败返回{@link RoomShape#EMPTY}
+     * @implNote 搜索过程只使用打包坐标与分区位图，10万方块房间几乎不产生垃圾对象
      */
-    private static void checkAndAdd(Level level, BlockPos pos, Set<BlockPos> visited,
-                                    ArrayDeque<BlockPos> queue, Set<BlockPos> roomBlocks,
-                                    int minX, int maxX, int minY, int maxY, int minZ, int maxZ) {
-        int x = pos.getX();
-        int y = pos.getY();
-        int z = pos.getZ();
-
-        if (x < minX || x > maxX || y < minY || y > maxY || z < minZ || z > maxZ) {
-            return;
-        }
-
-        if (visited.add(pos)) {
-            if (!level.hasChunkAt(pos)) {
-                return;
-            }
+    public static RoomShape detectRoom(Level level, BlockPos startPos) {
+        return new RoomFloodFill(level, startPos).run();
+    }
 
-            if (isPassable(level, pos)) {
-                queue.offer(pos);
-                roomBlocks.add(pos);
-            }
-        }
+    /**
+     * 使用预估体积执行封闭空间检测
+     *
+     * @param level          目标世界对象
+     * @param startPos       检测起始坐标
+     * @param expectedVolume 预估体积，达到{@link RoomDetectionConfig#parallelDetectionThreshold}时直接并行检测
+     * @return 房间形状，若失败返回{@link RoomShape#EMPTY}
+     */
+    public static RoomShape detectRoom(Level level, BlockPos startPos, int expectedVolume) {
+        return new RoomFloodFill(level, startPos).expectVolume(expectedVolume).run();
     }
 
     /**
@@ -177,24 +128,55 @@ public class RoomDetector {
      * @return 如果方块可通过返回true
      */
     public static boolean isPassable(Level level, BlockPos pos) {
-        BlockState state = level.getBlockState(pos);
+        return isPassable(level.getBlockState(pos));
+    }
 
-        if (state.isAir()) return true;
-        if (!state.getFluidState().isEmpty()) return true;
+    /**
+     * 检查方块状态是否可通过
+     *
+     * @param state 方块状态
+     * @return 如果方块可通过返回true
+     */
+    public static boolean isPassable(BlockState state) {
+        return PassabilityTable.isPassable(state);
+    }
+
+    /**
+     * 提交分片执行的房间检测
+     *
+     * @param level    服务器世界
+     * @param startPos 检测起始坐标
+     * @return 检测任务，可用于取消和获取结果
+     */
+    public static RoomDetectionJob detectRoomTicked(ServerLevel level, BlockPos startPos) {
+        return RoomDetectionScheduler.submit(level, startPos);
+    }
 
-        return state.hasProperty(BlockStateProperties.OPEN) && state.getValue(BlockStateProperties.OPEN);
+    /**
+     * 基于快照异步执行房间检测
+     *
+     * @param level    目标世界对象，必须在其所属线程上调用
+     * @param startPos 检测起始坐标
+     * @return 包含房间形状的CompletableFuture
+     * @implSpec 在调用线程复制搜索范围内的分区，搜索本身在ForkJoinPool.commonPool()中只读取快照
+     */
+    public static CompletableFuture<RoomShape> detectRoomAsync(Level level, BlockPos startPos) {
+        LevelSnapshot snapshot = LevelSnapshot.capture(level, RoomFloodFill.searchArea(level, startPos));
+        BlockPos immutableStart = startPos.immutable();
+        return CompletableFuture.supplyAsync(() -> new RoomFloodFill(snapshot, immutableStart).run());
     }
 
     /**
      * 异步执行房间检测
      *
-     * @param level    目标世界对象
+     * @param level    目标世界对象，必须在其所属线程上调用
      * @param startPos 检测起始坐标
      * @return 包含搜索结果的CompletableFuture
-     * @apiNote 建议配合thenAcceptAsync等异步方法使用
-     * @implSpec 实际使用ForkJoinPool.commonPool()线程池
+     * @apiNote 结果在工作线程上完成，回调中访问世界需切回服务器线程
+     * @see #detectRoomAsync
      */
     public static CompletableFuture<Set<BlockPos>> findRoomAsync(Level level, BlockPos startPos) {
-        return CompletableFuture.supplyAsync(() -> findRoom(level, startPos));
+        return detectRoomAsync(level, startPos)
+                .thenApply(shape -> shape.isEmpty() ? Collections.<BlockPos>emptySet() : shape.asSet());
     }
 }
\ No newline at end of file
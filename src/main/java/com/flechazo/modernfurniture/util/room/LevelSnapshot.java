@@ -0,0 +1,210 @@
+package com.flechazo.modernfurniture.util.room;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.BlockGetter;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+import net.minecraft.world.level.material.FluidState;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * 世界分区的只读快照
+ *
+ * <p>在服务器线程上复制指定分区的方块调色板，之后可以在任意线程上并发读取，
+ * 不会与主线程的方块修改竞争，也不会在工作线程中触发区块加载。</p>
+ *
+ * <h2>复制策略</h2>
+ * <ul>
+ *   <li>只含空气的分区共享同一个全局空容器，不复制</li>
+ *   <li>其余分区使用{@link PalettedContainer#copy()}复制调色板与存储数组</li>
+ *   <li>未加载或超出世界高度的分区不记录，{@link #getStates}返回null</li>
+ * </ul>
+ *
+ * <p>快照之外的位置读取为{@link Blocks#VOID_AIR}，需要区分时使用{@link #isLoaded}。</p>
+ *
+ * <h2>分片复制</h2>
+ * <p>较大的范围可以通过{@link #captureIncrementally}在多个刻内复制，每次调用只在时间预算内复制一部分分区。
+ * 不同分区复制于不同的刻，调用方需要自行处理复制期间发生的方块变化。</p>
+ */
+public final class LevelSnapshot implements BlockGetter, SectionSource {
+    private static final PalettedContainer<BlockState> AIR_SECTION = new PalettedContainer<>(
+            Block.BLOCK_STATE_REGISTRY, Blocks.AIR.defaultBlockState(), PalettedContainer.Strategy.SECTION_STATES);
+
+    private final int minBuildHeight;
+    private final int height;
+    private final Long2ObjectOpenHashMap<PalettedContainer<BlockState>> sections;
+
+    private LevelSnapshot(Level level, int expectedSections) {
+        this.minBuildHeight = level.getMinBuildHeight();
+        this.height = level.getHeight();
+        this.sections = new Long2ObjectOpenHashMap<>(expectedSections);
+    }
+
+    /**
+     * 复制指定分区
+     *
+     * @param level       目标世界，必须在其所属线程上调用
+     * @param sectionKeys SectionPos.asLong打包的分区坐标
+     * @return 快照
+     */
+    public static LevelSnapshot capture(Level level, LongSet sectionKeys) {
+        LevelSnapshot snapshot = new LevelSnapshot(level, sectionKeys.size());
+        LongIterator iterator = sectionKeys.iterator();
+        while (iterator.hasNext()) {
+            snapshot.copySection(level, iterator.nextLong());
+        }
+        return snapshot;
+    }
+
+    /**
+     * 复制与方块包围盒相交的所有分区
+     *
+     * @param level 目标世界，必须在其所属线程上调用
+     * @param box   方块包围盒
+     * @return 快照
+     */
+    public static LevelSnapshot capture(Level level, BoundingBox box) {
+        return capture(level, sectionKeys(level, box));
+    }
+
+    /**
+     * 开始分片复制与方块包围盒相交的所有分区
+     *
+     * @param level 目标世界，必须在其所属线程上推进
+     * @param box   方块包围盒
+     * @return 复制进度，通过{@link Capture#advance(long)}推进
+     */
+    public static Capture captureIncrementally(Level level, BoundingBox box) {
+        LongOpenHashSet keys = sectionKeys(level, box);
+        return new Capture(level, new LevelSnapshot(level, keys.size()), keys.toLongArray());
+    }
+
+    private static LongOpenHashSet sectionKeys(Level level, BoundingBox box) {
+        LongOpenHashSet keys = new LongOpenHashSet();
+        int minSectionY = Math.max(level.getMinSection(), SectionPos.blockToSectionCoord(box.minY()));
+        int maxSectionY = Math.min(level.getMaxSection() - 1, SectionPos.blockToSectionCoord(box.maxY()));
+        for (int sx = SectionPos.blockToSectionCoord(box.minX()); sx <= SectionPos.blockToSectionCoord(box.maxX()); sx++) {
+            for (int sz = SectionPos.blockToSectionCoord(box.minZ()); sz <= SectionPos.blockToSectionCoord(box.maxZ()); sz++) {
+                for (int sy = minSectionY; sy <= maxSectionY; sy++) {
+                    keys.add(SectionPos.asLong(sx, sy, sz));
+                }
+            }
+        }
+        return keys;
+    }
+
+    private void copySection(Level level, long key) {
+        int sectionY = SectionPos.y(key);
+        if (sectionY < level.getMinSection() || sectionY >= level.getMaxSection()) {
+            return;
+        }
+
+        LevelChunk chunk = level.getChunkSource().getChunkNow(SectionPos.x(key), SectionPos.z(key));
+        if (chunk == null) {
+            return;
+        }
+
+        LevelChunkSection section = chunk.getSection(chunk.getSectionIndexFromSectionY(sectionY));
+        sections.put(key, section.hasOnlyAir() ? AIR_SECTION : section.getStates().copy());
+    }
+
+    @Nullable
+    @Override
+    public PalettedContainer<BlockState> getStates(int sectionX, int sectionY, int sectionZ) {
+        return sections.get(SectionPos.asLong(sectionX, sectionY, sectionZ));
+    }
+
+    /**
+     * 检查位置所在分区是否包含在快照中
+     */
+    public boolean isLoaded(BlockPos pos) {
+        return sections.containsKey(SectionPos.asLong(pos));
+    }
+
+    public int getSectionCount() {
+        return sections.size();
+    }
+
+    @Override
+    public BlockState getBlockState(BlockPos pos) {
+        PalettedContainer<BlockState> states = sections.get(SectionPos.asLong(pos));
+        if (states == null) {
+            return Blocks.VOID_AIR.defaultBlockState();
+        }
+        return states.get(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15);
+    }
+
+    @Override
+    public FluidState getFluidState(BlockPos pos) {
+        return getBlockState(pos).getFluidState();
+    }
+
+    @Nullable
+    @Override
+    public BlockEntity getBlockEntity(BlockPos pos) {
+        return null;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getMinBuildHeight() {
+        return minBuildHeight;
+    }
+
+    /**
+     * 分片复制的进度
+     */
+    public static final class Capture {
+        private static final int CHECK_INTERVAL = 16; // 每复制多少分区检查一次时间
+
+        private final Level level;
+        private final LevelSnapshot snapshot;
+        private final long[] keys;
+        private int next = 0;
+
+        private Capture(Level level, LevelSnapshot snapshot, long[] keys) {
+            this.level = level;
+            this.snapshot = snapshot;
+            this.keys = keys;
+        }
+
+        /**
+         * 复制分区直到全部完成或超过截止时间
+         *
+         * @param deadlineNanos 截止时间（System.nanoTime），Long.MAX_VALUE表示一次复制完成
+         * @return 是否已全部复制
+         */
+        public boolean advance(long deadlineNanos) {
+            while (next < keys.length) {
+                snapshot.copySection(level, keys[next++]);
+                if (next % CHECK_INTERVAL == 0 && System.nanoTime() >= deadlineNanos) {
+                    break;
+                }
+            }
+            return next >= keys.length;
+        }
+
+        /**
+         * 获取快照，只有在{@link #advance(long)}返回true后才完整
+         */
+        public LevelSnapshot getSnapshot() {
+            return snapshot;
+        }
+    }
+}
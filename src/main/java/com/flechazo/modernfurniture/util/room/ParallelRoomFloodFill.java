@@ -0,0 +1,364 @@
+package com.flechazo.modernfurniture.util.room;
+
+import com.flechazo.modernfurniture.ModernFurniture;
+import com.flechazo.modernfurniture.config.module.RoomDetectionConfig;
+import com.flechazo.modernfurniture.util.RoomDetector;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * 并行房间洪水填充
+ *
+ * <p>面向接近{@link RoomDetectionConfig#maxRoomSize}的大型房间，以16³分区为单位并行计算连通分量。</p>
+ *
+ * <h2>算法流程</h2>
+ * <ol>
+ *   <li>在ForkJoin公共线程池中并行处理搜索范围内的每个分区，计算可通过掩码并标记分区内的连通分量</li>
+ *   <li>串行扫描相邻分区的公共面，用并查集合并跨分区相连的分量</li>
+ *   <li>取起点所在分量的根，汇总体积并输出{@link RoomShape}</li>
+ * </ol>
+ *
+ * <p>只读取{@link LevelSnapshot}，可在任意线程上运行。结果与串行的{@link RoomFloodFill}一致：
+ * 搜索包围盒与未加载分区视为墙壁，体积达到上限时返回{@link RoomShape#EMPTY}。</p>
+ */
+public class ParallelRoomFloodFill {
+    private static final int SECTION_CELLS = 4096;
+
+    private final LevelSnapshot snapshot;
+    private final BlockPos startPos;
+    private final BoundingBox area;
+    private final int maxVolume;
+
+    private long[] sectionKeys;
+    private SectionLabels[] labels;
+
+    /**
+     * 构造并行洪水填充任务
+     *
+     * @param snapshot 覆盖搜索范围的世界快照
+     * @param startPos 起始坐标
+     */
+    public ParallelRoomFloodFill(LevelSnapshot snapshot, BlockPos startPos) {
+        this.snapshot = snapshot;
+        this.startPos = startPos.immutable();
+        this.area = RoomFloodFill.searchArea(snapshot, startPos);
+        this.maxVolume = RoomDetectionConfig.maxRoomSize;
+    }
+
+    /**
+     * 执行并行洪水填充
+     *
+     * @return 房间形状，失败时返回{@link RoomShape#EMPTY}
+     */
+    public RoomShape run() {
+        long startTime = System.nanoTime();
+
+        collectSections();
+        IntStream.range(0, sectionKeys.length).parallel().forEach(this::labelSection);
+
+        // 为每个分区的局部分量分配全局编号
+        int total = 0;
+        Long2ObjectOpenHashMap<SectionLabels> byKey = new Long2ObjectOpenHashMap<>(sectionKeys.length);
+        for (int i = 0; i < sectionKeys.length; i++) {
+            if (labels[i] != null) {
+                labels[i].offset = total;
+                total += labels[i].componentCount;
+                byKey.put(sectionKeys[i], labels[i]);
+            }
+        }
+
+        SectionLabels startSection = byKey.get(SectionPos.asLong(startPos));
+        if (startSection == null) {
+            return RoomShape.EMPTY;
+        }
+        int startLabel = startSection.labels[RoomShape.cellIndex(startPos.getX(), startPos.getY(), startPos.getZ())];
+        if (startLabel == 0) {
+            return RoomShape.EMPTY;
+        }
+
+        UnionFind unionFind = new UnionFind(total);
+        for (int i = 0; i < sectionKeys.length; i++) {
+            SectionLabels section = labels[i];
+            if (section == null) {
+                continue;
+            }
+            long key = sectionKeys[i];
+            mergeFace(unionFind, section, byKey.get(SectionPos.offset(key, 1, 0, 0)), 0);
+            mergeFace(unionFind, section, byKey.get(SectionPos.offset(key, 0, 1, 0)), 1);
+            mergeFace(unionFind, section, byKey.get(SectionPos.offset(key, 0, 0, 1)), 2);
+        }
+
+        int root = unionFind.find(startSection.offset + startLabel - 1);
+        long volume = 0;
+        for (SectionLabels section : labels) {
+            if (section == null) {
+                continue;
+            }
+            for (int c = 0; c < section.componentCount; c++) {
+                if (unionFind.find(section.offset + c) == root) {
+                    volume += section.componentSizes[c];
+                }
+            }
+        }
+
+        if (volume >= maxVolume) {
+            ModernFurniture.LOGGER.debug("[房间检测] 并行检测体积过大: {}方块, {}ms", volume, (System.nanoTime() - startTime) / 1_000_000L);
+            return RoomShape.EMPTY;
+        }
+
+        RoomShape shape = buildShape(unionFind, root);
+        ModernFurniture.LOGGER.debug("[房间检测] 并行检测完成: {}方块, {}个分区, {}ms",
+                shape.size(), sectionKeys.length, (System.nanoTime() - startTime) / 1_000_000L);
+        return shape;
+    }
+
+    /**
+     * 列出搜索范围内的所有分区
+     */
+    private void collectSections() {
+        int minSX = SectionPos.blockToSectionCoord(area.minX()), maxSX = SectionPos.blockToSectionCoord(area.maxX());
+        int minSY = SectionPos.blockToSectionCoord(area.minY()), maxSY = SectionPos.blockToSectionCoord(area.maxY());
+        int minSZ = SectionPos.blockToSectionCoord(area.minZ()), maxSZ = SectionPos.blockToSectionCoord(area.maxZ());
+
+        sectionKeys = new long[(maxSX - minSX + 1) * (maxSY - minSY + 1) * (maxSZ - minSZ + 1)];
+        int i = 0;
+        for (int sx = minSX; sx <= maxSX; sx++) {
+            for (int sy = minSY; sy <= maxSY; sy++) {
+                for (int sz = minSZ; sz <= maxSZ; sz++) {
+                    sectionKeys[i++] = SectionPos.asLong(sx, sy, sz);
+                }
+            }
+        }
+        labels = new SectionLabels[sectionKeys.length];
+    }
+
+    /**
+     * 计算单个分区的可通过掩码并标记连通分量，在工作线程中执行
+     */
+    private void labelSection(int sectionIndex) {
+        long key = sectionKeys[sectionIndex];
+        int sx = SectionPos.x(key), sy = SectionPos.y(key), sz = SectionPos.z(key);
+        PalettedContainer<BlockState> states = snapshot.getStates(sx, sy, sz);
+        if (states == null) {
+            return;
+        }
+
+        int baseX = SectionPos.sectionToBlockCoord(sx);
+        int baseY = SectionPos.sectionToBlockCoord(sy);
+        int baseZ = SectionPos.sectionToBlockCoord(sz);
+        int x0 = Math.max(0, area.minX() - baseX), x1 = Math.min(15, area.maxX() - baseX);
+        int y0 = Math.max(0, area.minY() - baseY), y1 = Math.min(15, area.maxY() - baseY);
+        int z0 = Math.max(0, area.minZ() - baseZ), z1 = Math.min(15, area.maxZ() - baseZ);
+        if (x0 > x1 || y0 > y1 || z0 > z1) {
+            return;
+        }
+
+        boolean allPassable = !states.maybeHas(state -> !RoomDetector.isPassable(state));
+        if (!allPassable && !states.maybeHas(RoomDetector::isPassable)) {
+            return;
+        }
+
+        long[] passable = new long[RoomShape.SECTION_WORDS];
+        int passableCount = 0;
+        for (int y = y0; y <= y1; y++) {
+            for (int z = z0; z <= z1; z++) {
+                for (int x = x0; x <= x1; x++) {
+                    if (allPassable || RoomDetector.isPassable(states.get(x, y, z))) {
+                        int index = (y << 8) | (z << 4) | x;
+                        passable[index >>> 6] |= 1L << index;
+                        passableCount++;
+                    }
+                }
+            }
+        }
+        if (passableCount == 0) {
+            return;
+        }
+
+        SectionLabels section = new SectionLabels();
+        if (allPassable) {
+            // 长方体区域必然连通，整体作为一个分量
+            for (int index = 0; index < SECTION_CELLS; index++) {
+                if ((passable[index >>> 6] & (1L << index)) != 0) {
+                    section.labels[index] = 1;
+                }
+            }
+            section.componentSizes = new int[]{passableCount};
+            section.componentCount = 1;
+        } else {
+            labelComponents(section, passable);
+        }
+        labels[sectionIndex] = section;
+    }
+
+    /**
+     * 分区内的广度优先连通分量标记
+     */
+    private static void labelComponents(SectionLabels section, long[] passable) {
+        int[] queue = new int[SECTION_CELLS];
+        int[] sizes = new int[16];
+        short next = 0;
+
+        for (int seed = 0; seed < SECTION_CELLS; seed++) {
+            if ((passable[seed >>> 6] & (1L << seed)) == 0 || section.labels[seed] != 0) {
+                continue;
+            }
+
+            short label = ++next;
+            int head = 0, tail = 0;
+            queue[tail++] = seed;
+            section.labels[seed] = label;
+
+            while (head < tail) {
+                int index = queue[head++];
+                int x = index & 15, y = index >>> 8, z = (index >>> 4) & 15;
+                if (x > 0) tail = enqueue(section, passable, queue, tail, index - 1, label);
+                if (x < 15) tail = enqueue(section, passable, queue, tail, index + 1, label);
+                if (z > 0) tail = enqueue(section, passable, queue, tail, index - 16, label);
+                if (z < 15) tail = enqueue(section, passable, queue, tail, index + 16, label);
+                if (y > 0) tail = enqueue(section, passable, queue, tail, index - 256, label);
+                if (y < 15) tail = enqueue(section, passable, queue, tail, index + 256, label);
+            }
+
+            if (label > sizes.length) {
+                sizes = Arrays.copyOf(sizes, sizes.length * 2);
+            }
+            sizes[label - 1] = tail;
+        }
+
+        section.componentSizes = sizes;
+        section.componentCount = next;
+    }
+
+    private static int enqueue(SectionLabels section, long[] passable, int[] queue, int tail, int index, short label) {
+        if ((passable[index >>> 6] & (1L << index)) != 0 && section.labels[index] == 0) {
+            section.labels[index] = label;
+            queue[tail++] = index;
+        }
+        return tail;
+    }
+
+    /**
+     * 合并与正方向相邻分区公共面上的分量
+     *
+     * @param axis 0=X, 1=Y, 2=Z
+     */
+    private static void mergeFace(UnionFind unionFind, SectionLabels section, SectionLabels neighbor, int axis) {
+        if (neighbor == null) {
+            return;
+        }
+
+        for (int a = 0; a < 16; a++) {
+            for (int b = 0; b < 16; b++) {
+                int from, to;
+                switch (axis) {
+                    case 0 -> {
+                        from = (a << 8) | (b << 4) | 15;
+                        to = (a << 8) | (b << 4);
+                    }
+                    case 1 -> {
+                        from = (15 << 8) | (a << 4) | b;
+                        to = (a << 4) | b;
+                    }
+                    default -> {
+                        from = (a << 8) | (15 << 4) | b;
+                        to = (a << 8) | b;
+                    }
+                }
+
+                short labelFrom = section.labels[from];
+                short labelTo = neighbor.labels[to];
+                if (labelFrom != 0 && labelTo != 0) {
+                    unionFind.union(section.offset + labelFrom - 1, neighbor.offset + labelTo - 1);
+                }
+            }
+        }
+    }
+
+    private RoomShape buildShape(UnionFind unionFind, int root) {
+        Long2ObjectOpenHashMap<long[]> masks = new Long2ObjectOpenHashMap<>();
+        for (int i = 0; i < sectionKeys.length; i++) {
+            SectionLabels section = labels[i];
+            if (section == null) {
+                continue;
+            }
+
+            boolean[] inRoom = new boolean[section.componentCount];
+            boolean any = false;
+            for (int c = 0; c < section.componentCount; c++) {
+                inRoom[c] = unionFind.find(section.offset + c) == root;
+                any |= inRoom[c];
+            }
+            if (!any) {
+                continue;
+            }
+
+            long[] mask = new long[RoomShape.SECTION_WORDS];
+            for (int index = 0; index < SECTION_CELLS; index++) {
+                short label = section.labels[index];
+                if (label != 0 && inRoom[label - 1]) {
+                    mask[index >>> 6] |= 1L << index;
+                }
+            }
+            masks.put(sectionKeys[i], mask);
+        }
+        return RoomShape.of(masks);
+    }
+
+    /**
+     * 单个分区的连通分量标记，0表示不可通过
+     */
+    private static class SectionLabels {
+        final short[] labels = new short[SECTION_CELLS];
+        int[] componentSizes;
+        int componentCount;
+        int offset;
+    }
+
+    /**
+     * 带路径减半与按大小合并的并查集
+     */
+    private static class UnionFind {
+        private final int[] parent;
+        private final int[] size;
+
+        UnionFind(int count) {
+            this.parent = new int[count];
+            this.size = new int[count];
+            for (int i = 0; i < count; i++) {
+                parent[i] = i;
+                size[i] = 1;
+            }
+        }
+
+        int find(int i) {
+            while (parent[i] != i) {
+                parent[i] = parent[parent[i]];
+                i = parent[i];
+            }
+            return i;
+        }
+
+        void union(int a, int b) {
+            int rootA = find(a);
+            int rootB = find(b);
+            if (rootA == rootB) {
+                return;
+            }
+            if (size[rootA] < size[rootB]) {
+                int swap = rootA;
+                rootA = rootB;
+                rootB = swap;
+            }
+            parent[rootB] = rootA;
+            size[rootA] += size[rootB];
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.flechazo.modernfurniture.util.room;
+
+import com.flechazo.modernfurniture.ModernFurniture;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.tags.BlockTags;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.EmptyBlockGetter;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.block.state.properties.BlockStateProperties;
+
+/**
+ * 按全局方块状态ID预计算的分类表
+ *
+ * <p>房间检测与积雪放置共用同一张表，每次判断只需一次数组读取。</p>
+ *
+ * <h2>分类标志</h2>
+ * <ul>
+ *   <li><b>可通过：</b>空气、含流体方块、OPEN属性为true的方块，以及{@link #ROOM_PASSABLE}标签中的方块</li>
+ *   <li><b>实心地面：</b>非空气且完整遮挡渲染的方块，积雪可以落在其上方</li>
+ * </ul>
+ *
+ * <h2>生命周期</h2>
+ * <p>首次查询时构建（此时方块注册表已冻结），数据包重载标签后重新构建。
+ * 表以不可变数组整体发布，可以在任意线程上读取。</p>
+ */
+public class PassabilityTable {
+    /**
+     * 额外视为可通过的方块，供整合包添加活板门、玻璃板、地毯等
+     */
+    public static final TagKey<Block> ROOM_PASSABLE = BlockTags.create(new ResourceLocation(ModernFurniture.MODID, "room_passable"));
+
+    private static final byte PASSABLE = 1;
+    private static final byte SOLID_FLOOR = 2;
+
+    private static volatile byte[] table;
+
+    /**
+     * 检查方块状态是否可通过
+     */
+    public static boolean isPassable(BlockState state) {
+        return (flags(state) & PASSABLE) != 0;
+    }
+
+    /**
+     * 检查方块状态是否为可承载积雪的实心地面
+     */
+    public static boolean isSolidFloor(BlockState state) {
+        return (flags(state) & SOLID_FLOOR) != 0;
+    }
+
+    /**
+     * 重新构建分类表，标签重载后调用
+     */
+    public static void rebuild() {
+        byte[] flags = new byte[Block.BLOCK_STATE_REGISTRY.size()];
+        for (BlockState state : Block.BLOCK_STATE_REGISTRY) {
+            flags[Block.getId(state)] = classify(state);
+        }
+        table = flags;
+        ModernFurniture.LOGGER.debug("[房间检测] 已构建方块分类表: {}个方块状态", flags.length);
+    }
+
+    private static byte flags(BlockState state) {
+        byte[] current = table;
+        if (current == null) {
+            rebuild();
+            current = table;
+        }
+
+        int id = Block.getId(state);
+        // 未注册的状态（ID为-1）或表构建后新增的状态直接分类
+        return id >= 0 && id < current.length ? current[id] : classify(state);
+    }
+
+    private static byte classify(BlockState state) {
+        byte flags = 0;
+        if (state.isAir()
+                || !state.getFluidState().isEmpty()
+                || (state.hasProperty(BlockStateProperties.OPEN) && state.getValue(BlockStateProperties.OPEN))
+                || state.is(ROOM_PASSABLE)) {
+            flags |= PASSABLE;
+        }
+        // 与原版的形状缓存一致，使用空世界计算
+        if (!state.isAir() && state.isSolidRender(EmptyBlockGetter.INSTANCE, BlockPos.ZERO)) {
+            flags |= SOLID_FLOOR;
+        }
+        return flags;
+    }
+}
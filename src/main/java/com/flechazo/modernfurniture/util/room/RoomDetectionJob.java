@@ -0,0 +1,83 @@
+package com.flechazo.modernfurniture.util.room;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 可跨刻恢复的房间检测任务
+ *
+ * <p>由{@link RoomDetectionScheduler}在服务器线程上分片推进，完成后在服务器线程上完成{@link #getFuture()}。</p>
+ *
+ * <h2>检测期间的方块变化</h2>
+ * <p>搜索跨越多个刻时，已扫描的区域可能再次发生变化。任务记录搜索范围内的变化位置，
+ * 调用方在注册房间后通过{@link #getChanges()}交给{@link RoomModel}重新处理。</p>
+ */
+public class RoomDetectionJob {
+    private final ServerLevel level;
+    private final BlockPos startPos;
+    private final RoomFloodFill floodFill;
+    private final CompletableFuture<RoomShape> future = new CompletableFuture<>();
+    private final LongArrayList changes = new LongArrayList();
+
+    RoomDetectionJob(ServerLevel level, BlockPos startPos) {
+        this.level = level;
+        this.startPos = startPos.immutable();
+        this.floodFill = new RoomFloodFill(level, this.startPos);
+    }
+
+    /**
+     * 在时间预算内推进检测
+     *
+     * @return 检测是否已结束
+     */
+    boolean resume(long budgetNanos) {
+        return floodFill.resume(budgetNanos);
+    }
+
+    void complete() {
+        future.complete(floodFill.getResult());
+    }
+
+    void recordChange(BlockPos pos) {
+        if (floodFill.isInSearchArea(pos.getX(), pos.getY(), pos.getZ())) {
+            changes.add(pos.asLong());
+        }
+    }
+
+    /**
+     * 取消检测，未开始的部分不再执行
+     */
+    public void cancel() {
+        future.cancel(false);
+    }
+
+    public boolean isCancelled() {
+        return future.isCancelled();
+    }
+
+    public ServerLevel getLevel() {
+        return level;
+    }
+
+    public BlockPos getStartPos() {
+        return startPos;
+    }
+
+    /**
+     * 检测结果，失败时为{@link RoomShape#EMPTY}
+     */
+    public CompletableFuture<RoomShape> getFuture() {
+        return future;
+    }
+
+    /**
+     * 检测期间搜索范围内发生变化的位置（BlockPos.asLong打包坐标）
+     */
+    public LongList getChanges() {
+        return changes;
+    }
+}
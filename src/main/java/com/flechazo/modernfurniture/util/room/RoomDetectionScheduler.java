@@ -0,0 +1,104 @@
+package com.flechazo.modernfurniture.util.room;
+
+import com.flechazo.modernfurniture.ModernFurniture;
+import com.flechazo.modernfurniture.config.module.RoomDetectionConfig;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.LevelAccessor;
+
+import java.util.ArrayDeque;
+
+/**
+ * 房间检测调度器
+ *
+ * <p>在服务器线程上分片执行所有等待中的{@link RoomDetectionJob}，避免单次检测阻塞整个刻。</p>
+ *
+ * <h2>调度策略</h2>
+ * <ul>
+ *   <li>所有世界共享一个每刻时间预算{@link RoomDetectionConfig#detectionBudgetMicros}</li>
+ *   <li>任务按提交顺序执行，未完成的任务移到队尾，剩余预算交给其他任务</li>
+ *   <li>每刻每个任务最多推进一次，等待并行结果的任务不会阻塞后面的任务</li>
+ *   <li>已取消的任务直接丢弃</li>
+ * </ul>
+ */
+public class RoomDetectionScheduler {
+    private static final ArrayDeque<RoomDetectionJob> JOBS = new ArrayDeque<>();
+
+    /**
+     * 提交检测任务
+     *
+     * @param level    服务器世界
+     * @param startPos 检测起始坐标
+     * @return 检测任务，结果在后续的服务器刻中完成
+     */
+    public static RoomDetectionJob submit(ServerLevel level, BlockPos startPos) {
+        RoomDetectionJob job = new RoomDetectionJob(level, startPos);
+        JOBS.addLast(job);
+        return job;
+    }
+
+    /**
+     * 在时间预算内推进等待中的任务，每个服务器刻调用一次
+     */
+    public static void tick() {
+        if (JOBS.isEmpty()) {
+            return;
+        }
+
+        long deadline = System.nanoTime() + RoomDetectionConfig.detectionBudgetMicros * 1_000L;
+        long remaining;
+        // 完成回调中新提交的任务留到下一刻
+        int count = JOBS.size();
+        while (count-- > 0 && !JOBS.isEmpty() && (remaining = deadline - System.nanoTime()) > 0) {
+            RoomDetectionJob job = JOBS.pollFirst();
+            if (job.isCancelled()) {
+                continue;
+            }
+
+            boolean finished;
+            try {
+                finished = job.resume(remaining);
+            } catch (Exception e) {
+                ModernFurniture.LOGGER.warn("Room detection failed at {}", job.getStartPos(), e);
+                job.getFuture().completeExceptionally(e);
+                continue;
+            }
+
+            if (!finished) {
+                JOBS.addLast(job);
+                continue;
+            }
+
+            job.complete();
+        }
+    }
+
+    /**
+     * 记录方块变化，交给覆盖该位置的检测任务
+     *
+     * @param level 发生变化的世界
+     * @param pos   发生变化的位置
+     */
+    public static void onBlockChanged(LevelAccessor level, BlockPos pos) {
+        for (RoomDetectionJob job : JOBS) {
+            if (job.getLevel() == level) {
+                job.recordChange(pos);
+            }
+        }
+    }
+
+    /**
+     * 世界卸载时取消该世界的所有任务
+     *
+     * @param level 服务器世界
+     */
+    public static void cancelAll(ServerLevel level) {
+        JOBS.removeIf(job -> {
+            if (job.getLevel() == level) {
+                job.cancel();
+                return true;
+            }
+            return false;
+        });
+    }
+}
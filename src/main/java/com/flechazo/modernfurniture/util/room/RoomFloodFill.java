@@ -0,0 +1,495 @@
+package com.flechazo.modernfurniture.util.room;
+
+import com.flechazo.modernfurniture.ModernFurniture;
+import com.flechazo.modernfurniture.config.module.RoomDetectionConfig;
+import com.flechazo.modernfurniture.util.RoomDetector;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.LevelHeightAccessor;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 基于打包坐标的房间洪水填充引擎
+ *
+ * <p>{@link RoomDetector}的底层实现，全程不创建BlockPos对象。</p>
+ *
+ * <h2>内存布局</h2>
+ * <ul>
+ *   <li>队列：LongArrayFIFOQueue存储BlockPos.asLong打包坐标</li>
+ *   <li>已访问：按分区懒分配的4096位掩码，等价于搜索包围盒上的分块位图</li>
+ *   <li>房间方块：同样按分区存储，完成后直接构建{@link RoomShape}</li>
+ * </ul>
+ *
+ * <h2>分区原生模式</h2>
+ * <p>启用{@link RoomDetectionConfig#sectionNativeDetection}时，每个分区只解析一次：</p>
+ * <ul>
+ *   <li>通过调色板判断分区是否整体可通过或整体不可通过，一步完成分类</li>
+ *   <li>整体可通过的分区直接填满，仅将分区表面方块加入队列</li>
+ *   <li>混合分区使用本地0..15坐标读取，并按调色板条目缓存可通过性</li>
+ * </ul>
+ *
+ * <h2>分片执行</h2>
+ * <p>队列与掩码在调用之间保留，{@link #resume(long)}可以在任意时间预算内推进搜索，
+ * 下一刻从上次停下的位置继续。超时判断使用累计的计算时间，而不是经过的刻数。</p>
+ *
+ * <h2>并行升级</h2>
+ * <p>已填充体积或预估体积达到{@link RoomDetectionConfig#parallelDetectionThreshold}时，放弃串行搜索，
+ * 改用{@link ParallelRoomFloodFill}在快照上并行计算。直接读取世界时先在当前线程复制搜索范围，
+ * 复制同样按时间预算分片，半径较大时可能跨越多个刻；复制期间的方块变化由{@link RoomDetectionJob}记录。
+ * 分片执行期间并行结果在后续调用中取回。</p>
+ *
+ * <h2>快照模式</h2>
+ * <p>基于{@link LevelSnapshot}构造时只读取快照，可以在任意线程上运行；快照之外的分区视为未加载。</p>
+ *
+ * <p>实例只能运行一次；直接读取世界时必须在持有世界的线程上使用。</p>
+ */
+public class RoomFloodFill {
+    private static final byte SECTION_PER_BLOCK = 0;
+    private static final byte SECTION_UNLOADED = 1;
+    private static final byte SECTION_SOLID = 2;
+    private static final byte SECTION_PASSABLE = 3;
+    private static final byte SECTION_MIXED = 4;
+    private static final int CHECK_INTERVAL = 256; // 每处理多少方块检查一次时间
+
+    @Nullable
+    private final Level level;
+    private final SectionSource source;
+    private final BlockPos startPos;
+    private final int minX, maxX, minY, maxY, minZ, maxZ;
+    private final int maxVolume;
+    private final int parallelThreshold;
+    private final long maxTimeNanos;
+
+    private final Long2ObjectOpenHashMap<SectionMasks> sections = new Long2ObjectOpenHashMap<>();
+    private final LongArrayFIFOQueue queue = new LongArrayFIFOQueue(1024);
+    private final BlockPos.MutableBlockPos cursor = new BlockPos.MutableBlockPos();
+
+    private long cachedSectionKey = Long.MIN_VALUE;
+    private SectionMasks cachedSection;
+    private int roomSize = 0;
+    private boolean overflow = false;
+    private boolean started = false;
+    private boolean finished = false;
+    private RoomShape result = RoomShape.EMPTY;
+    private long elapsedNanos = 0;
+    private int processed = 0;
+    private int expectedVolume = 0;
+    @Nullable
+    private LevelSnapshot.Capture pendingCapture;
+    private CompletableFuture<RoomShape> parallelResult;
+
+    /**
+     * 构造洪水填充任务
+     *
+     * @param level    目标世界
+     * @param startPos 起始坐标
+     */
+    public RoomFloodFill(Level level, BlockPos startPos) {
+        this(level, RoomDetectionConfig.sectionNativeDetection ? SectionSource.of(level) : null, level, startPos);
+    }
+
+    /**
+     * 构造只读取快照的洪水填充任务
+     *
+     * @param snapshot 世界快照，应覆盖起点周围的搜索范围
+     * @param startPos 起始坐标
+     */
+    public RoomFloodFill(LevelSnapshot snapshot, BlockPos startPos) {
+        this(null, snapshot, snapshot, startPos);
+    }
+
+    private RoomFloodFill(@Nullable Level level, @Nullable SectionSource source, LevelHeightAccessor heightAccessor, BlockPos startPos) {
+        this.level = level;
+        this.source = source;
+        this.startPos = startPos.immutable();
+
+        BoundingBox area = searchArea(heightAccessor, startPos);
+        this.minX = area.minX();
+        this.maxX = area.maxX();
+        this.minY = area.minY();
+        this.maxY = area.maxY();
+        this.minZ = area.minZ();
+        this.maxZ = area.maxZ();
+        this.maxVolume = RoomDetectionConfig.maxRoomSize;
+        this.parallelThreshold = RoomDetectionConfig.parallelDetectionThreshold;
+        this.maxTimeNanos = RoomDetectionConfig.maxSearchTimeMs * 1_000_000L;
+    }
+
+    /**
+     * 设置预估的房间体积，达到并行阈值时直接使用并行检测
+     *
+     * @param expectedVolume 预估体积，例如同一房间上一次的检测结果
+     * @return 当前实例
+     */
+    public RoomFloodFill expectVolume(int expectedVolume) {
+        this.expectedVolume = expectedVolume;
+        return this;
+    }
+
+    /**
+     * 一次性执行完整的洪水填充
+     *
+     * @return 房间形状，失败（超时、超出体积、起点不可通过）时返回{@link RoomShape#EMPTY}
+     */
+    public RoomShape run() {
+        resume(Long.MAX_VALUE);
+        return result;
+    }
+
+    /**
+     * 在时间预算内推进洪水填充
+     *
+     * @param budgetNanos 本次调用可用的时间（纳秒）
+     * @return 搜索是否已结束，结束后通过{@link #getResult()}获取结果
+     */
+    public boolean resume(long budgetNanos) {
+        if (finished) {
+            return true;
+        }
+
+        if (parallelResult != null) {
+            return awaitParallel(budgetNanos);
+        }
+
+        long sliceStart = System.nanoTime();
+        long deadline = budgetNanos == Long.MAX_VALUE ? Long.MAX_VALUE : sliceStart + budgetNanos;
+
+        if (pendingCapture != null) {
+            return continueCapture(deadline, budgetNanos);
+        }
+
+        if (!started) {
+            started = true;
+            if (!isStartPassable()) {
+                return finish(RoomShape.EMPTY);
+            }
+            if (shouldParallelize(expectedVolume)) {
+                return escalate(deadline, budgetNanos);
+            }
+            visit(startPos.getX(), startPos.getY(), startPos.getZ());
+        }
+
+        while (!queue.isEmpty()) {
+            if (overflow) {
+                ModernFurniture.LOGGER.debug("[房间检测] 体积过大: {}方块, {}ms", roomSize, totalMillis(sliceStart));
+                return finish(RoomShape.EMPTY);
+            }
+            if (++processed % CHECK_INTERVAL == 0) {
+                if (shouldParallelize(roomSize)) {
+                    return escalate(deadline, budgetNanos);
+                }
+                long sliceNanos = System.nanoTime() - sliceStart;
+                if (elapsedNanos + sliceNanos > maxTimeNanos) {
+                    ModernFurniture.LOGGER.debug("[房间检测] 超时: {}方块, {}ms", processed, totalMillis(sliceStart));
+                    return finish(RoomShape.EMPTY);
+                }
+                if (sliceNanos >= budgetNanos) {
+                    elapsedNanos += sliceNanos;
+                    return false;
+                }
+            }
+
+            long current = queue.dequeueLong();
+            int x = BlockPos.getX(current);
+            int y = BlockPos.getY(current);
+            int z = BlockPos.getZ(current);
+
+            visit(x, y + 1, z);
+            visit(x, y - 1, z);
+            visit(x + 1, y, z);
+            visit(x - 1, y, z);
+            visit(x, y, z + 1);
+            visit(x, y, z - 1);
+        }
+
+        if (overflow) {
+            return finish(RoomShape.EMPTY);
+        }
+
+        RoomShape shape = buildShape();
+        ModernFurniture.LOGGER.debug("[房间检测] 完成: {}方块, {}ms", shape.size(), totalMillis(sliceStart));
+        return finish(shape);
+    }
+
+    /**
+     * 计算以起点为中心的搜索包围盒
+     *
+     * @param level    目标世界
+     * @param startPos 起始坐标
+     * @return 搜索包围盒，用于确定需要复制的快照范围
+     */
+    public static BoundingBox searchArea(LevelHeightAccessor level, BlockPos startPos) {
+        int maxRadius = RoomDetectionConfig.maxSearchDistance;
+        return new BoundingBox(
+                startPos.getX() - maxRadius,
+                Math.max(level.getMinBuildHeight(), startPos.getY() - maxRadius),
+                startPos.getZ() - maxRadius,
+                startPos.getX() + maxRadius,
+                Math.min(level.getMaxBuildHeight() - 1, startPos.getY() + maxRadius),
+                startPos.getZ() + maxRadius);
+    }
+
+    /**
+     * 获取搜索结果，搜索未结束或失败时为{@link RoomShape#EMPTY}
+     */
+    public RoomShape getResult() {
+        return result;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * 检查坐标是否位于搜索包围盒内
+     */
+    public boolean isInSearchArea(int x, int y, int z) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+    }
+
+    private boolean shouldParallelize(int volume) {
+        return parallelThreshold > 0 && volume >= parallelThreshold;
+    }
+
+    /**
+     * 切换为并行检测
+     */
+    private boolean escalate(long deadline, long budgetNanos) {
+        ModernFurniture.LOGGER.debug("[房间检测] 房间较大，切换为并行检测: 已填充{}方块, 预估{}方块", roomSize, expectedVolume);
+
+        // 串行搜索状态不再需要
+        sections.clear();
+        queue.clear();
+        cachedSection = null;
+        cachedSectionKey = Long.MIN_VALUE;
+
+        if (level == null) {
+            // 已在工作线程中读取快照，直接执行
+            return finish(new ParallelRoomFloodFill((LevelSnapshot) source, startPos).run());
+        }
+
+        pendingCapture = LevelSnapshot.captureIncrementally(level, searchArea(level, startPos));
+        return continueCapture(deadline, budgetNanos);
+    }
+
+    /**
+     * 在时间预算内继续复制搜索范围，复制完成后提交并行检测
+     */
+    private boolean continueCapture(long deadline, long budgetNanos) {
+        if (!pendingCapture.advance(deadline)) {
+            return false;
+        }
+
+        LevelSnapshot snapshot = pendingCapture.getSnapshot();
+        pendingCapture = null;
+        ModernFurniture.LOGGER.debug("[房间检测] 搜索范围复制完成: {}分区", snapshot.getSectionCount());
+        parallelResult = CompletableFuture.supplyAsync(new ParallelRoomFloodFill(snapshot, startPos)::run);
+        return awaitParallel(budgetNanos);
+    }
+
+    private boolean awaitParallel(long budgetNanos) {
+        if (budgetNanos != Long.MAX_VALUE && !parallelResult.isDone()) {
+            return false;
+        }
+
+        try {
+            return finish(parallelResult.join());
+        } catch (Exception e) {
+            ModernFurniture.LOGGER.warn("Parallel room detection failed at {}", startPos, e);
+            return finish(RoomShape.EMPTY);
+        }
+    }
+
+    private boolean isStartPassable() {
+        if (level == null) {
+            PalettedContainer<BlockState> states = source.getStates(
+                    SectionPos.blockToSectionCoord(startPos.getX()),
+                    SectionPos.blockToSectionCoord(startPos.getY()),
+                    SectionPos.blockToSectionCoord(startPos.getZ()));
+            return states != null && RoomDetector.isPassable(states.get(startPos.getX() & 15, startPos.getY() & 15, startPos.getZ() & 15));
+        }
+        return level.hasChunkAt(startPos) && RoomDetector.isPassable(level.getBlockState(startPos));
+    }
+
+    private boolean finish(RoomShape shape) {
+        finished = true;
+        result = shape;
+        pendingCapture = null;
+        // 释放搜索状态
+        sections.clear();
+        queue.clear();
+        cachedSection = null;
+        cachedSectionKey = Long.MIN_VALUE;
+        return true;
+    }
+
+    private long totalMillis(long sliceStart) {
+        return (elapsedNanos + System.nanoTime() - sliceStart) / 1_000_000L;
+    }
+
+    /**
+     * 访问单个方块，可通过时加入队列和房间
+     */
+    private void visit(int x, int y, int z) {
+        if (x < minX || x > maxX || y < minY || y > maxY || z < minZ || z > maxZ) {
+            return;
+        }
+
+        SectionMasks section = section(x, y, z);
+        if (section.type == SECTION_UNLOADED || section.type == SECTION_SOLID) {
+            return;
+        }
+
+        int index = RoomShape.cellIndex(x, y, z);
+        int word = index >>> 6;
+        long bit = 1L << index;
+
+        if ((section.visited[word] & bit) != 0) {
+            return;
+        }
+
+        if (section.type == SECTION_PASSABLE) {
+            fillSection(section, x >> 4, y >> 4, z >> 4);
+            return;
+        }
+
+        section.visited[word] |= bit;
+
+        boolean passable;
+        if (section.type == SECTION_MIXED) {
+            passable = PassabilityTable.isPassable(section.states.get(x & 15, y & 15, z & 15));
+        } else {
+            cursor.set(x, y, z);
+            passable = level.hasChunkAt(cursor) && RoomDetector.isPassable(level.getBlockState(cursor));
+        }
+
+        if (passable) {
+            addCell(section, word, bit, x, y, z);
+        }
+    }
+
+    private void addCell(SectionMasks section, int word, long bit, int x, int y, int z) {
+        section.room()[word] |= bit;
+        queue.enqueue(BlockPos.asLong(x, y, z));
+        if (++roomSize >= maxVolume) {
+            overflow = true;
+        }
+    }
+
+    /**
+     * 一次性填满整体可通过的分区
+     *
+     * <p>分区与搜索包围盒的交集是连通的长方体，直接写入掩码，
+     * 只有位于分区边界且邻居仍在包围盒内的方块需要继续扩展。</p>
+     */
+    private void fillSection(SectionMasks section, int sectionX, int sectionY, int sectionZ) {
+        int baseX = SectionPos.sectionToBlockCoord(sectionX);
+        int baseY = SectionPos.sectionToBlockCoord(sectionY);
+        int baseZ = SectionPos.sectionToBlockCoord(sectionZ);
+        int x0 = Math.max(baseX, minX), x1 = Math.min(baseX + 15, maxX);
+        int y0 = Math.max(baseY, minY), y1 = Math.min(baseY + 15, maxY);
+        int z0 = Math.max(baseZ, minZ), z1 = Math.min(baseZ + 15, maxZ);
+
+        long[] room = section.room();
+        for (int y = y0; y <= y1; y++) {
+            for (int z = z0; z <= z1; z++) {
+                for (int x = x0; x <= x1; x++) {
+                    int index = RoomShape.cellIndex(x, y, z);
+                    int word = index >>> 6;
+                    long bit = 1L << index;
+                    section.visited[word] |= bit;
+                    room[word] |= bit;
+
+                    boolean surface = (x == baseX && x > minX) || (x == baseX + 15 && x < maxX)
+                            || (y == baseY && y > minY) || (y == baseY + 15 && y < maxY)
+                            || (z == baseZ && z > minZ) || (z == baseZ + 15 && z < maxZ);
+                    if (surface) {
+                        queue.enqueue(BlockPos.asLong(x, y, z));
+                    }
+                }
+            }
+        }
+
+        roomSize += (x1 - x0 + 1) * (y1 - y0 + 1) * (z1 - z0 + 1);
+        if (roomSize >= maxVolume) {
+            overflow = true;
+        }
+    }
+
+    /**
+     * 获取方块所在分区的掩码，缓存最近一次访问的分区
+     */
+    private SectionMasks section(int x, int y, int z) {
+        long key = SectionPos.asLong(x >> 4, y >> 4, z >> 4);
+        if (key != cachedSectionKey) {
+            cachedSectionKey = key;
+            cachedSection = sections.get(key);
+            if (cachedSection == null) {
+                cachedSection = createSection(x >> 4, y >> 4, z >> 4);
+                sections.put(key, cachedSection);
+            }
+        }
+        return cachedSection;
+    }
+
+    /**
+     * 创建分区记录，分区原生模式下同时完成分区分类
+     */
+    private SectionMasks createSection(int sectionX, int sectionY, int sectionZ) {
+        SectionMasks section = new SectionMasks();
+        if (source == null) {
+            section.type = SECTION_PER_BLOCK;
+            return section;
+        }
+
+        PalettedContainer<BlockState> states = source.getStates(sectionX, sectionY, sectionZ);
+        if (states == null) {
+            section.type = SECTION_UNLOADED;
+        } else if (!states.maybeHas(state -> !PassabilityTable.isPassable(state))) {
+            section.type = SECTION_PASSABLE;
+        } else if (!states.maybeHas(PassabilityTable::isPassable)) {
+            section.type = SECTION_SOLID;
+        } else {
+            section.type = SECTION_MIXED;
+            section.states = states;
+        }
+        return section;
+    }
+
+    private RoomShape buildShape() {
+        Long2ObjectOpenHashMap<long[]> roomMasks = new Long2ObjectOpenHashMap<>(sections.size());
+        for (Long2ObjectMap.Entry<SectionMasks> entry : sections.long2ObjectEntrySet()) {
+            long[] room = entry.getValue().room;
+            if (room != null) {
+                roomMasks.put(entry.getLongKey(), room);
+            }
+        }
+        return RoomShape.of(roomMasks);
+    }
+
+    /**
+     * 单个分区的已访问与房间掩码
+     */
+    private static class SectionMasks {
+        final long[] visited = new long[RoomShape.SECTION_WORDS];
+        long[] room;
+        byte type;
+        PalettedContainer<BlockState> states;
+
+        long[] room() {
+            if (room == null) {
+                room = new long[RoomShape.SECTION_WORDS];
+            }
+            return room;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.flechazo.modernfurniture.util.room;
+
+import net.minecraft.core.BlockPos;
+
+/**
+ * 共享房间的成员，通常是正在制冷的空调
+ * 成员通过{@link RoomRegistry}加入房间，房间发生变化或失效时收到通知
+ */
+public interface RoomMember {
+
+    /**
+     * 成员所在的方块坐标，用作积雪分布的冷源位置
+     *
+     * @return 方块坐标
+     */
+    BlockPos getBlockPos();
+
+    /**
+     * 房间形状发生变化时调用
+     *
+     * @param room 所属房间
+     */
+    void onRoomChanged(SharedRoom room);
+
+    /**
+     * 房间失效并被解散时调用，成员此时已不再属于该房间
+     *
+     * @param room 已解散的房间
+     */
+    void onRoomInvalidated(SharedRoom room);
+}
@@ -0,0 +1,524 @@
+package com.flechazo.modernfurniture.util.room;
+
+import com.flechazo.modernfurniture.ModernFurniture;
+import com.flechazo.modernfurniture.config.module.RoomDetectionConfig;
+import com.flechazo.modernfurniture.util.RoomDetector;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 增量维护的房间模型
+ *
+ * <p>在已检测的房间上应用局部更新，只有连通性真正发生变化时才重新进行完整的洪水填充。</p>
+ *
+ * <h2>更新规则</h2>
+ * <ul>
+ *   <li><b>边界墙被移除：</b>从该位置开始有界的局部洪水填充，将新连通的空间并入房间；
+ *   超出预算时撤销本次填充并提交完整重新检测，只有体积超过上限才视为失效</li>
+ *   <li><b>房间内放置方块：</b>在被移除方块的相邻房间方块之间进行有界连通性检查</li>
+ *   <li><b>房间被切分：</b>切下的小块直接移除；若检查无法在预算内得出结论，则提交完整重新检测</li>
+ * </ul>
+ *
+ * <h2>重新检测</h2>
+ * <p>完整检测通过{@link RoomDetectionScheduler}分片执行，不阻塞服务器线程。完成前保持当前形状，
+ * 期间排队的变化暂不处理；完成后连同检测任务记录的变化一起重新应用到新形状上。</p>
+ *
+ * <h2>快照发布</h2>
+ * <p>模型持有自己的可变分区掩码，{@link #getShape()}只复制发生变化的分区，
+ * 其余分区复用上一份{@link RoomShape}的掩码。</p>
+ *
+ * <p>方块变化先通过{@link #markChanged}排队，在服务器刻中统一处理，此时读取到的是变化后的方块状态。</p>
+ */
+public class RoomModel {
+    private static final int SPLIT_SEARCH_BUDGET = 4096; // 单次连通性检查最多访问的方块数
+    private static final int EXPAND_SEARCH_BUDGET = 4096; // 单次局部扩张最多并入的方块数
+
+    /**
+     * 局部扩张结果
+     */
+    private enum Expansion {
+        /**
+         * 新连通的空间已全部并入
+         */
+        CLOSED,
+
+        /**
+         * 房间体积超过上限
+         */
+        OVERFLOW,
+
+        /**
+         * 预算内未能结束，已撤销，需要完整重新检测
+         */
+        UNFINISHED
+    }
+
+    /**
+     * 变化处理结果
+     */
+    public enum ChangeResult {
+        /**
+         * 房间未发生变化
+         */
+        UNCHANGED,
+
+        /**
+         * 房间已局部更新或重新检测
+         */
+        UPDATED,
+
+        /**
+         * 房间不再封闭或超出限制
+         */
+        INVALID
+    }
+
+    private final ServerLevel level;
+    private final BlockPos anchor;
+    private final long anchorPacked;
+    private final int minX, maxX, minY, maxY, minZ, maxZ;
+    private final int maxVolume;
+
+    private final Long2ObjectOpenHashMap<long[]> sections = new Long2ObjectOpenHashMap<>();
+    private final LongOpenHashSet dirtySections = new LongOpenHashSet();
+    private final LongLinkedOpenHashSet pendingChanges = new LongLinkedOpenHashSet();
+    private final BlockPos.MutableBlockPos cursor = new BlockPos.MutableBlockPos();
+
+    private RoomShape shape;
+    private int size;
+    private RoomDetectionJob rebuildJob = null;
+
+    /**
+     * 构造房间模型
+     *
+     * @param level  房间所在世界
+     * @param anchor 房间检测起点，始终属于房间
+     * @param shape  初始房间形状
+     */
+    public RoomModel(ServerLevel level, BlockPos anchor, RoomShape shape) {
+        this.level = level;
+        this.anchor = anchor.immutable();
+        this.anchorPacked = anchor.asLong();
+
+        final int maxRadius = RoomDetectionConfig.maxSearchDistance;
+        this.minX = anchor.getX() - maxRadius;
+        this.maxX = anchor.getX() + maxRadius;
+        this.minY = Math.max(level.getMinBuildHeight(), anchor.getY() - maxRadius);
+        this.maxY = Math.min(level.getMaxBuildHeight() - 1, anchor.getY() + maxRadius);
+        this.minZ = anchor.getZ() - maxRadius;
+        this.maxZ = anchor.getZ() + maxRadius;
+        this.maxVolume = RoomDetectionConfig.maxRoomSize;
+
+        reset(shape);
+    }
+
+    /**
+     * 获取当前房间形状
+     *
+     * @return 不可变房间形状
+     */
+    public RoomShape getShape() {
+        if (!dirtySections.isEmpty()) {
+            Long2ObjectOpenHashMap<long[]> published = new Long2ObjectOpenHashMap<>(sections.size());
+            for (Long2ObjectMap.Entry<long[]> entry : sections.long2ObjectEntrySet()) {
+                long key = entry.getLongKey();
+                long[] previous = shape.getSectionMaskByKey(key);
+                published.put(key, previous == null || dirtySections.contains(key)
+                        ? entry.getValue().clone()
+                        : previous);
+            }
+            shape = RoomShape.of(published);
+            dirtySections.clear();
+        }
+        return shape;
+    }
+
+    public BlockPos getAnchor() {
+        return anchor;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 检查方块变化是否可能影响房间
+     *
+     * @param pos 发生变化的位置
+     * @return 位置属于房间或与房间相邻时返回true
+     */
+    public boolean isAffectedBy(BlockPos pos) {
+        int x = pos.getX(), y = pos.getY(), z = pos.getZ();
+        return contains(x, y, z) || hasRoomNeighbor(x, y, z);
+    }
+
+    /**
+     * 记录发生变化的位置，等待下一次{@link #processPendingChanges()}处理
+     *
+     * @param pos 发生变化的位置
+     */
+    public void markChanged(BlockPos pos) {
+        pendingChanges.add(pos.asLong());
+    }
+
+    /**
+     * 处理排队的方块变化
+     *
+     * @return 处理结果
+     */
+    public ChangeResult processPendingChanges() {
+        boolean changed = false;
+        if (rebuildJob != null) {
+            if (!rebuildJob.getFuture().isDone()) {
+                return ChangeResult.UNCHANGED;
+            }
+            if (!finishRebuild()) {
+                return ChangeResult.INVALID;
+            }
+            changed = true;
+        }
+
+        if (pendingChanges.isEmpty()) {
+            return changed ? ChangeResult.UPDATED : ChangeResult.UNCHANGED;
+        }
+
+        long[] changes = pendingChanges.toLongArray();
+        pendingChanges.clear();
+
+        boolean needsRebuild = false;
+
+        for (long packed : changes) {
+            int x = BlockPos.getX(packed);
+            int y = BlockPos.getY(packed);
+            int z = BlockPos.getZ(packed);
+
+            cursor.set(x, y, z);
+            if (!level.hasChunkAt(cursor)) {
+                continue;
+            }
+
+            boolean passable = RoomDetector.isPassable(level.getBlockState(cursor));
+            boolean inRoom = contains(x, y, z);
+
+            if (inRoom && !passable) {
+                if (packed == anchorPacked) {
+                    return ChangeResult.INVALID;
+                }
+
+                setCell(x, y, z, false);
+                changed = true;
+                if (!checkSplit(x, y, z)) {
+                    needsRebuild = true;
+                }
+            } else if (!inRoom && passable && isInBounds(x, y, z) && hasRoomNeighbor(x, y, z)) {
+                Expansion expansion = expandFrom(x, y, z);
+                if (expansion == Expansion.OVERFLOW) {
+                    ModernFurniture.LOGGER.debug("[房间检测] 房间超出体积上限: {}", anchor);
+                    return ChangeResult.INVALID;
+                }
+                if (expansion == Expansion.UNFINISHED) {
+                    needsRebuild = true;
+                } else {
+                    changed = true;
+                }
+            }
+        }
+
+        if (needsRebuild) {
+            ModernFurniture.LOGGER.debug("[房间检测] 连通性发生变化，重新检测: {}", anchor);
+            rebuildJob = RoomDetector.detectRoomTicked(level, anchor);
+        }
+
+        return changed ? ChangeResult.UPDATED : ChangeResult.UNCHANGED;
+    }
+
+    /**
+     * 取消进行中的重新检测，房间注销时调用
+     */
+    public void shutdown() {
+        if (rebuildJob != null) {
+            rebuildJob.cancel();
+            rebuildJob = null;
+        }
+    }
+
+    /**
+     * 应用已结束的重新检测结果
+     *
+     * @return 房间仍然有效时返回true
+     */
+    private boolean finishRebuild() {
+        RoomDetectionJob job = rebuildJob;
+        rebuildJob = null;
+
+        CompletableFuture<RoomShape> future = job.getFuture();
+        RoomShape detected = future.isCompletedExceptionally() ? RoomShape.EMPTY : future.join();
+        if (detected.isEmpty()) {
+            return false;
+        }
+
+        reset(detected);
+        // 检测期间已扫描的区域可能再次变化，在新形状上重新处理
+        LongList jobChanges = job.getChanges();
+        for (int i = 0; i < jobChanges.size(); i++) {
+            pendingChanges.add(jobChanges.getLong(i));
+        }
+        return true;
+    }
+
+    /**
+     * 从新打开的位置开始有界洪水填充，将新连通的空间并入房间
+     *
+     * <p>最多并入{@link #EXPAND_SEARCH_BUDGET}个方块。超出预算时撤销已并入的方块，
+     * 由完整重新检测判断新空间是否封闭，例如打开两个大房间之间的门。</p>
+     *
+     * @return 扩张结果
+     */
+    private Expansion expandFrom(int startX, int startY, int startZ) {
+        LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
+        LongArrayList added = new LongArrayList();
+
+        expandTo(queue, added, startX, startY, startZ);
+
+        while (!queue.isEmpty()) {
+            if (size >= maxVolume) {
+                return Expansion.OVERFLOW;
+            }
+            if (added.size() > EXPAND_SEARCH_BUDGET) {
+                for (int i = 0; i < added.size(); i++) {
+                    long packed = added.getLong(i);
+                    setCell(BlockPos.getX(packed), BlockPos.getY(packed), BlockPos.getZ(packed), false);
+                }
+                return Expansion.UNFINISHED;
+            }
+
+            long current = queue.dequeueLong();
+            int x = BlockPos.getX(current);
+            int y = BlockPos.getY(current);
+            int z = BlockPos.getZ(current);
+
+            expandTo(queue, added, x, y + 1, z);
+            expandTo(queue, added, x, y - 1, z);
+            expandTo(queue, added, x + 1, y, z);
+            expandTo(queue, added, x - 1, y, z);
+            expandTo(queue, added, x, y, z + 1);
+            expandTo(queue, added, x, y, z - 1);
+        }
+
+        return size < maxVolume ? Expansion.CLOSED : Expansion.OVERFLOW;
+    }
+
+    private void expandTo(LongArrayFIFOQueue queue, LongArrayList added, int x, int y, int z) {
+        if (!isInBounds(x, y, z) || contains(x, y, z)) {
+            return;
+        }
+
+        cursor.set(x, y, z);
+        if (level.hasChunkAt(cursor) && RoomDetector.isPassable(level.getBlockState(cursor))) {
+            setCell(x, y, z, true);
+            long packed = BlockPos.asLong(x, y, z);
+            queue.enqueue(packed);
+            added.add(packed);
+        }
+    }
+
+    /**
+     * 在房间内放置方块后检查房间是否被切分
+     *
+     * @return 能够在预算内确定连通性时返回true，否则需要完整重新检测
+     */
+    private boolean checkSplit(int x, int y, int z) {
+        LongArrayList pending = new LongArrayList(6);
+        addIfRoom(pending, x, y + 1, z);
+        addIfRoom(pending, x, y - 1, z);
+        addIfRoom(pending, x + 1, y, z);
+        addIfRoom(pending, x - 1, y, z);
+        addIfRoom(pending, x, y, z + 1);
+        addIfRoom(pending, x, y, z - 1);
+
+        while (pending.size() > 1) {
+            boolean progressed = false;
+
+            for (int i = 0; i < pending.size(); i++) {
+                BoundedSearch search = new BoundedSearch(pending.getLong(i), pending);
+                if (search.reachedAll) {
+                    return true;
+                }
+
+                if (search.exhausted) {
+                    // 找到了完整的连通块，且它与其余邻居不连通
+                    if (search.visited.contains(anchorPacked)) {
+                        retainOnly(search.visited);
+                        return true;
+                    }
+
+                    removeCells(search.visited);
+                    for (int j = pending.size() - 1; j >= 0; j--) {
+                        if (search.visited.contains(pending.getLong(j))) {
+                            pending.removeLong(j);
+                        }
+                    }
+                    progressed = true;
+                    break;
+                }
+            }
+
+            if (!progressed) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void addIfRoom(LongArrayList list, int x, int y, int z) {
+        if (contains(x, y, z)) {
+            list.add(BlockPos.asLong(x, y, z));
+        }
+    }
+
+    private void retainOnly(LongOpenHashSet cells) {
+        sections.clear();
+        dirtySections.clear();
+        size = 0;
+        shape = RoomShape.EMPTY;
+        setCells(cells, true);
+    }
+
+    private void removeCells(LongOpenHashSet cells) {
+        setCells(cells, false);
+    }
+
+    private void setCells(LongOpenHashSet cells, boolean inRoom) {
+        LongIterator iterator = cells.iterator();
+        while (iterator.hasNext()) {
+            long packed = iterator.nextLong();
+            setCell(BlockPos.getX(packed), BlockPos.getY(packed), BlockPos.getZ(packed), inRoom);
+        }
+    }
+
+    private void reset(RoomShape newShape) {
+        sections.clear();
+        dirtySections.clear();
+        for (int i = 0; i < newShape.getSectionCount(); i++) {
+            sections.put(newShape.getSectionKey(i), newShape.getSectionMask(i).clone());
+        }
+        shape = newShape;
+        size = newShape.size();
+    }
+
+    private boolean isInBounds(int x, int y, int z) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+    }
+
+    private boolean hasRoomNeighbor(int x, int y, int z) {
+        return contains(x, y + 1, z) || contains(x, y - 1, z)
+                || contains(x + 1, y, z) || contains(x - 1, y, z)
+                || contains(x, y, z + 1) || contains(x, y, z - 1);
+    }
+
+    private boolean contains(int x, int y, int z) {
+        long[] mask = sections.get(SectionPos.asLong(x >> 4, y >> 4, z >> 4));
+        if (mask == null) {
+            return false;
+        }
+        int index = RoomShape.cellIndex(x, y, z);
+        return (mask[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private void setCell(int x, int y, int z, boolean inRoom) {
+        long key = SectionPos.asLong(x >> 4, y >> 4, z >> 4);
+        long[] mask = sections.get(key);
+        if (mask == null) {
+            if (!inRoom) return;
+            mask = new long[RoomShape.SECTION_WORDS];
+            sections.put(key, mask);
+        }
+
+        int index = RoomShape.cellIndex(x, y, z);
+        long bit = 1L << index;
+        boolean present = (mask[index >>> 6] & bit) != 0;
+        if (present == inRoom) {
+            return;
+        }
+
+        if (inRoom) {
+            mask[index >>> 6] |= bit;
+            size++;
+        } else {
+            mask[index >>> 6] &= ~bit;
+            size--;
+        }
+        dirtySections.add(key);
+    }
+
+    /**
+     * 房间内部的有界广度优先搜索
+     */
+    private class BoundedSearch {
+        final LongOpenHashSet visited = new LongOpenHashSet();
+        boolean exhausted = false;
+        boolean reachedAll = false;
+
+        BoundedSearch(long start, LongArrayList targets) {
+            LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
+            int remaining = targets.size();
+
+            visited.add(start);
+            queue.enqueue(start);
+            if (targets.contains(start)) {
+                remaining--;
+            }
+
+            while (!queue.isEmpty()) {
+                if (remaining == 0) {
+                    reachedAll = true;
+                    return;
+                }
+                if (visited.size() > SPLIT_SEARCH_BUDGET) {
+                    return;
+                }
+
+                long current = queue.dequeueLong();
+                int x = BlockPos.getX(current);
+                int y = BlockPos.getY(current);
+                int z = BlockPos.getZ(current);
+
+                remaining -= visit(queue, targets, x, y + 1, z);
+                remaining -= visit(queue, targets, x, y - 1, z);
+                remaining -= visit(queue, targets, x + 1, y, z);
+                remaining -= visit(queue, targets, x - 1, y, z);
+                remaining -= visit(queue, targets, x, y, z + 1);
+                remaining -= visit(queue, targets, x, y, z - 1);
+            }
+
+            reachedAll = remaining == 0;
+            exhausted = !reachedAll;
+        }
+
+        private int visit(LongArrayFIFOQueue queue, LongArrayList targets, int x, int y, int z) {
+            if (!contains(x, y, z)) {
+                return 0;
+            }
+
+            long packed = BlockPos.asLong(x, y, z);
+            if (!visited.add(packed)) {
+                return 0;
+            }
+
+            queue.enqueue(packed);
+            return targets.contains(packed) ? 1 : 0;
+        }
+    }
+}
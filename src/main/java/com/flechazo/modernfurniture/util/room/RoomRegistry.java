@@ -0,0 +1,241 @@
+package com.flechazo.modernfurniture.util.room;
+
+import com.flechazo.modernfurniture.ModernFurniture;
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 每个服务器世界的房间注册表
+ *
+ * <p>将方块坐标映射到房间ID，使同一房间内的多台空调共享一次检测和一个积雪管理器。</p>
+ *
+ * <h2>索引结构</h2>
+ * <ul>
+ *   <li>房间ID到{@link SharedRoom}的映射</li>
+ *   <li>分区坐标到房间ID列表的索引，查询时再用{@link RoomShape#contains}精确判断</li>
+ * </ul>
+ *
+ * <p>注册表在世界刻结束时统一推进所有房间，只能在服务器线程上访问。</p>
+ */
+public class RoomRegistry {
+    private static final Map<ServerLevel, RoomRegistry> REGISTRIES = new WeakHashMap<>();
+
+    private final ServerLevel level;
+    private final Int2ObjectLinkedOpenHashMap<SharedRoom> rooms = new Int2ObjectLinkedOpenHashMap<>();
+    private final Long2ObjectOpenHashMap<IntArrayList> sectionIndex = new Long2ObjectOpenHashMap<>();
+    // 单次方块变化已通知的房间，避免跨分区重复通知
+    private final IntArrayList notified = new IntArrayList();
+    private int nextId = 1;
+
+    private RoomRegistry(ServerLevel level) {
+        this.level = level;
+    }
+
+    /**
+     * 获取世界对应的注册表
+     *
+     * @param level 服务器世界
+     * @return 房间注册表
+     */
+    public static RoomRegistry get(ServerLevel level) {
+        return REGISTRIES.computeIfAbsent(level, RoomRegistry::new);
+    }
+
+    /**
+     * 推进世界内的所有房间
+     *
+     * @param level 服务器世界
+     */
+    public static void tick(ServerLevel level) {
+        RoomRegistry registry = REGISTRIES.get(level);
+        if (registry != null) {
+            registry.tickRooms();
+        }
+    }
+
+    /**
+     * 世界卸载时释放所有房间
+     *
+     * @param level 服务器世界
+     */
+    public static void unload(ServerLevel level) {
+        RoomRegistry registry = REGISTRIES.remove(level);
+        if (registry != null) {
+            for (SharedRoom room : registry.rooms.values()) {
+                // 世界保存已经完成，积雪方块留在区块中，记录转入存档等待下次加载时领回
+                room.shutdown(true);
+            }
+            registry.rooms.clear();
+            registry.sectionIndex.clear();
+        }
+    }
+
+    /**
+     * 将方块变化交给可能受影响的房间
+     *
+     * @param level 服务器世界
+     * @param pos   发生变化的位置
+     */
+    public static void onBlockChanged(ServerLevel level, BlockPos pos) {
+        RoomRegistry registry = REGISTRIES.get(level);
+        if (registry != null && !registry.rooms.isEmpty()) {
+            registry.markChanged(pos);
+        }
+    }
+
+    /**
+     * 查找包含指定坐标的房间
+     *
+     * @param pos 方块坐标
+     * @return 房间，不存在时返回null
+     */
+    @Nullable
+    public SharedRoom getRoomAt(BlockPos pos) {
+        IntArrayList ids = sectionIndex.get(SectionPos.asLong(pos));
+        if (ids == null) {
+            return null;
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            SharedRoom room = rooms.get(ids.getInt(i));
+            if (room != null && room.getShape().contains(pos)) {
+                return room;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 注册新检测到的房间
+     *
+     * @param anchor       检测起点，作为房间模型的锚点
+     * @param shape        房间形状
+     * @param boundaryHash 边界指纹
+     * @return 新房间，尚无成员
+     */
+    public SharedRoom register(BlockPos anchor, RoomShape shape, long boundaryHash) {
+        SharedRoom room = new SharedRoom(nextId++, this, level, anchor.immutable(), shape, boundaryHash);
+        rooms.put(room.getId(), room);
+        index(room);
+        ModernFurniture.LOGGER.debug("[房间注册] 注册房间{}: {}方块", room.getId(), shape.size());
+        return room;
+    }
+
+    /**
+     * 注销房间并释放资源，由{@link SharedRoom#removeMember}在最后一个成员离开时调用
+     *
+     * @param keepSnow 是否保留房间内的积雪
+     */
+    void unregister(SharedRoom room, boolean keepSnow) {
+        if (rooms.remove(room.getId()) != null) {
+            unindex(room);
+            room.shutdown(keepSnow);
+            ModernFurniture.LOGGER.debug("[房间注册] 注销房间{}", room.getId());
+        }
+    }
+
+    public int getRoomCount() {
+        return rooms.size();
+    }
+
+    private void tickRooms() {
+        if (rooms.isEmpty()) {
+            return;
+        }
+
+        long currentTime = level.getGameTime();
+        // 成员在回调中可能注册或注销房间，遍历副本
+        for (SharedRoom room : new ArrayList<>(rooms.values())) {
+            if (rooms.get(room.getId()) != room) {
+                continue;
+            }
+
+            RoomShape previous = room.getShape();
+            RoomModel.ChangeResult result = room.tick(currentTime);
+            if (result == RoomModel.ChangeResult.INVALID) {
+                dissolve(room);
+            } else if (result == RoomModel.ChangeResult.UPDATED) {
+                unindex(room.getId(), previous);
+                index(room);
+            }
+        }
+    }
+
+    /**
+     * 解散失效的房间，并通知成员重新检测
+     */
+    private void dissolve(SharedRoom room) {
+        List<RoomMember> members = room.getMembers();
+        unregister(room, false);
+        ModernFurniture.LOGGER.debug("[房间注册] 房间{}已失效，{}台空调重新检测", room.getId(), members.size());
+
+        for (RoomMember member : members) {
+            member.onRoomInvalidated(room);
+        }
+    }
+
+    /**
+     * 通知变化位置所在分区的房间，位于分区边缘时相邻分区的房间也可能以它为边界
+     */
+    private void markChanged(BlockPos pos) {
+        int x = pos.getX(), y = pos.getY(), z = pos.getZ();
+        notified.clear();
+        markChanged(pos, x, y, z);
+        if ((x & 15) == 0) markChanged(pos, x - 1, y, z);
+        if ((x & 15) == 15) markChanged(pos, x + 1, y, z);
+        if ((y & 15) == 0) markChanged(pos, x, y - 1, z);
+        if ((y & 15) == 15) markChanged(pos, x, y + 1, z);
+        if ((z & 15) == 0) markChanged(pos, x, y, z - 1);
+        if ((z & 15) == 15) markChanged(pos, x, y, z + 1);
+    }
+
+    private void markChanged(BlockPos pos, int x, int y, int z) {
+        IntArrayList ids = sectionIndex.get(SectionPos.asLong(x >> 4, y >> 4, z >> 4));
+        if (ids == null) {
+            return;
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            int id = ids.getInt(i);
+            if (!notified.contains(id)) {
+                notified.add(id);
+                SharedRoom room = rooms.get(id);
+                if (room != null) {
+                    room.markChanged(pos);
+                }
+            }
+        }
+    }
+
+    private void index(SharedRoom room) {
+        RoomShape shape = room.getShape();
+        for (int i = 0; i < shape.getSectionCount(); i++) {
+            sectionIndex.computeIfAbsent(shape.getSectionKey(i), key -> new IntArrayList(1)).add(room.getId());
+        }
+    }
+
+    private void unindex(SharedRoom room) {
+        unindex(room.getId(), room.getShape());
+    }
+
+    private void unindex(int id, RoomShape shape) {
+        for (int i = 0; i < shape.getSectionCount(); i++) {
+            long key = shape.getSectionKey(i);
+            IntArrayList ids = sectionIndex.get(key);
+            if (ids != null) {
+                ids.rem(id);
+                if (ids.isEmpty()) {
+                    sectionIndex.remove(key);
+                }
+            }
+        }
+    }
+}
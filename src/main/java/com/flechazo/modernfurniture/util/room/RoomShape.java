@@ -0,0 +1,537 @@
+package com.flechazo.modernfurniture.util.room;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * 紧凑房间形状
+ *
+ * <p>以分区(16³)为单位存储房间方块，每个分区使用4096位掩码，不再为每个方块创建BlockPos对象。</p>
+ *
+ * <h2>数据布局</h2>
+ * <ul>
+ *   <li>sectionKeys：分区坐标（SectionPos.asLong）</li>
+ *   <li>masks：与sectionKeys一一对应的64个long组成的位掩码</li>
+ *   <li>位索引：(y &amp; 15) &lt;&lt; 8 | (z &amp; 15) &lt;&lt; 4 | (x &amp; 15)</li>
+ * </ul>
+ *
+ * <h2>持久化格式</h2>
+ * <ul>
+ *   <li>FullSections：完全填满的分区坐标，不存储掩码</li>
+ *   <li>Sections + Masks：其余分区坐标及每个分区64个long的打包位图</li>
+ * </ul>
+ *
+ * <h2>常用查询</h2>
+ * <ul>
+ *   <li>contains：包围盒判断后查一次分区索引，O(1)</li>
+ *   <li>forEachFloor：下方方块不属于房间的地面方块，逐字按位运算得到</li>
+ *   <li>分区枚举：按下标访问分区坐标与掩码，无需遍历方块</li>
+ * </ul>
+ *
+ * <p>实例不可变，可以在线程之间安全共享。</p>
+ */
+public final class RoomShape {
+    public static final int SECTION_WORDS = 64;
+    public static final RoomShape EMPTY = new RoomShape(new long[0], new long[0][], 0,
+            new BoundingBox(0, 0, 0, 0, 0, 0));
+
+    private final long[] sectionKeys;
+    private final long[][] masks;
+    private final Long2IntOpenHashMap sectionIndex;
+    private final int size;
+    private final BoundingBox bounds;
+
+    private RoomShape(long[] sectionKeys, long[][] masks, int size, BoundingBox bounds) {
+        this.sectionKeys = sectionKeys;
+        this.masks = masks;
+        this.size = size;
+        this.bounds = bounds;
+        this.sectionIndex = new Long2IntOpenHashMap(sectionKeys.length);
+        this.sectionIndex.defaultReturnValue(-1);
+        for (int i = 0; i < sectionKeys.length; i++) {
+            sectionIndex.put(sectionKeys[i], i);
+        }
+    }
+
+    /**
+     * 由分区掩码构建房间形状
+     *
+     * @param sections 分区坐标到位掩码的映射，构建后不应再修改掩码
+     * @return 房间形状，若没有任何方块返回EMPTY
+     */
+    public static RoomShape of(Long2ObjectMap<long[]> sections) {
+        long[] keys = new long[sections.size()];
+        long[][] masks = new long[sections.size()][];
+        int count = 0;
+        int size = 0;
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+
+        for (Long2ObjectMap.Entry<long[]> entry : sections.long2ObjectEntrySet()) {
+            long[] mask = entry.getValue();
+            int cells = cardinality(mask);
+            if (cells == 0) continue;
+
+            // 按字计算分区内的局部包围盒，复杂度与分区数量成正比而非方块数量
+            int minLy = 15, maxLy = 0, minLz = 15, maxLz = 0, xBits = 0;
+            for (int word = 0; word < SECTION_WORDS; word++) {
+                long bits = mask[word];
+                if (bits == 0) continue;
+                minLy = Math.min(minLy, word >>> 2);
+                maxLy = Math.max(maxLy, word >>> 2);
+                for (int lane = 0; lane < 4; lane++) {
+                    int row = (int) (bits >>> (lane << 4)) & 0xFFFF;
+                    if (row == 0) continue;
+                    int lz = ((word & 3) << 2) | lane;
+                    minLz = Math.min(minLz, lz);
+                    maxLz = Math.max(maxLz, lz);
+                    xBits |= row;
+                }
+            }
+
+            long key = entry.getLongKey();
+            int baseX = SectionPos.sectionToBlockCoord(SectionPos.x(key));
+            int baseY = SectionPos.sectionToBlockCoord(SectionPos.y(key));
+            int baseZ = SectionPos.sectionToBlockCoord(SectionPos.z(key));
+            minX = Math.min(minX, baseX + Integer.numberOfTrailingZeros(xBits));
+            maxX = Math.max(maxX, baseX + 31 - Integer.numberOfLeadingZeros(xBits));
+            minY = Math.min(minY, baseY + minLy);
+            maxY = Math.max(maxY, baseY + maxLy);
+            minZ = Math.min(minZ, baseZ + minLz);
+            maxZ = Math.max(maxZ, baseZ + maxLz);
+
+            keys[count] = key;
+            masks[count] = mask;
+            count++;
+            size += cells;
+        }
+
+        if (size == 0) {
+            return EMPTY;
+        }
+
+        return new RoomShape(Arrays.copyOf(keys, count), Arrays.copyOf(masks, count), size,
+                new BoundingBox(minX, minY, minZ, maxX, maxY, maxZ));
+    }
+
+    /**
+     * 从NBT加载房间形状
+     *
+     * @param tag {@link #save()}写出的标签
+     * @return 房间形状，数据损坏时返回EMPTY
+     */
+    public static RoomShape load(CompoundTag tag) {
+        long[] fullSections = tag.getLongArray("FullSections");
+        long[] partialSections = tag.getLongArray("Sections");
+        long[] packedMasks = tag.getLongArray("Masks");
+        if (packedMasks.length != partialSections.length * SECTION_WORDS) {
+            return EMPTY;
+        }
+
+        Long2ObjectOpenHashMap<long[]> sections = new Long2ObjectOpenHashMap<>(fullSections.length + partialSections.length);
+        for (long key : fullSections) {
+            long[] mask = new long[SECTION_WORDS];
+            Arrays.fill(mask, -1L);
+            sections.put(key, mask);
+        }
+        for (int i = 0; i < partialSections.length; i++) {
+            sections.put(partialSections[i], Arrays.copyOfRange(packedMasks, i * SECTION_WORDS, (i + 1) * SECTION_WORDS));
+        }
+        return of(sections);
+    }
+
+    /**
+     * 保存到NBT
+     *
+     * @return 包含分区坐标与打包位图的标签
+     */
+    public CompoundTag save() {
+        LongArrayList fullSections = new LongArrayList();
+        LongArrayList partialSections = new LongArrayList();
+        LongArrayList packedMasks = new LongArrayList();
+
+        for (int i = 0; i < sectionKeys.length; i++) {
+            if (cardinality(masks[i]) == 16 * 16 * 16) {
+                fullSections.add(sectionKeys[i]);
+            } else {
+                partialSections.add(sectionKeys[i]);
+                packedMasks.addElements(packedMasks.size(), masks[i]);
+            }
+        }
+
+        CompoundTag tag = new CompoundTag();
+        tag.putLongArray("FullSections", fullSections.toLongArray());
+        tag.putLongArray("Sections", partialSections.toLongArray());
+        tag.putLongArray("Masks", packedMasks.toLongArray());
+        return tag;
+    }
+
+    /**
+     * 计算方块在分区掩码中的位索引
+     */
+    public static int cellIndex(int x, int y, int z) {
+        return ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+    }
+
+    public static int localX(int index) {
+        return index & 15;
+    }
+
+    public static int localY(int index) {
+        return (index >>> 8) & 15;
+    }
+
+    public static int localZ(int index) {
+        return (index >>> 4) & 15;
+    }
+
+    /**
+     * 统计掩码中的方块数量
+     */
+    public static int cardinality(long[] mask) {
+        int count = 0;
+        for (long word : mask) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * 检查方块是否属于房间
+     */
+    public boolean contains(int x, int y, int z) {
+        if (!bounds.isInside(x, y, z) || size == 0) {
+            return false;
+        }
+
+        int index = sectionIndex.get(SectionPos.asLong(x >> 4, y >> 4, z >> 4));
+        if (index < 0) {
+            return false;
+        }
+
+        int cell = cellIndex(x, y, z);
+        return (masks[index][cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    public boolean contains(BlockPos pos) {
+        return contains(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    /**
+     * 检查方块是否为地面方块，即属于房间且下方方块不属于房间
+     */
+    public boolean isFloor(int x, int y, int z) {
+        return contains(x, y, z) && !contains(x, y - 1, z);
+    }
+
+    /**
+     * 检查坐标附近是否有房间方块
+     *
+     * @param pos    坐标
+     * @param radius 欧氏距离半径
+     * @return 坐标本身或半径内任一方块属于房间时返回true
+     */
+    public boolean isNear(BlockPos pos, int radius) {
+        int x = pos.getX(), y = pos.getY(), z = pos.getZ();
+        if (size == 0 || x < bounds.minX() - radius || x > bounds.maxX() + radius
+                || y < bounds.minY() - radius || y > bounds.maxY() + radius
+                || z < bounds.minZ() - radius || z > bounds.maxZ() + radius) {
+            return false;
+        }
+
+        int radiusSqr = radius * radius;
+        for (int dy = -radius; dy <= radius; dy++) {
+            for (int dz = -radius; dz <= radius; dz++) {
+                for (int dx = -radius; dx <= radius; dx++) {
+                    if (dx * dx + dy * dy + dz * dz <= radiusSqr && contains(x + dx, y + dy, z + dz)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 获取房间的轴对齐包围盒
+     */
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
+    public int getSectionCount() {
+        return sectionKeys.length;
+    }
+
+    /**
+     * 获取分区坐标
+     *
+     * @param section 分区下标，0..getSectionCount()-1
+     * @return SectionPos.asLong打包的分区坐标
+     */
+    public long getSectionKey(int section) {
+        return sectionKeys[section];
+    }
+
+    /**
+     * 查找分区下标
+     *
+     * @param key SectionPos.asLong打包的分区坐标
+     * @return 分区下标，房间不包含该分区时返回-1
+     */
+    public int getSectionIndex(long key) {
+        return sectionIndex.get(key);
+    }
+
+    /**
+     * 统计分区内的房间方块数量
+     */
+    public int getSectionSize(int section) {
+        return cardinality(masks[section]);
+    }
+
+    /**
+     * 获取分区掩码，调用方不得修改返回的数组
+     */
+    long[] getSectionMask(int section) {
+        return masks[section];
+    }
+
+    long[] getSectionMaskByKey(long key) {
+        int index = sectionIndex.get(key);
+        return index < 0 ? null : masks[index];
+    }
+
+    /**
+     * 遍历房间内所有方块
+     *
+     * @param consumer 接收BlockPos.asLong打包坐标
+     */
+    public void forEach(LongConsumer consumer) {
+        for (int i = 0; i < sectionKeys.length; i++) {
+            long key = sectionKeys[i];
+            int baseX = SectionPos.sectionToBlockCoord(SectionPos.x(key));
+            int baseY = SectionPos.sectionToBlockCoord(SectionPos.y(key));
+            int baseZ = SectionPos.sectionToBlockCoord(SectionPos.z(key));
+            long[] mask = masks[i];
+            for (int word = 0; word < SECTION_WORDS; word++) {
+                long bits = mask[word];
+                while (bits != 0) {
+                    int index = (word << 6) | Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    consumer.accept(BlockPos.asLong(baseX + localX(index), baseY + localY(index), baseZ + localZ(index)));
+                }
+            }
+        }
+    }
+
+    /**
+     * 遍历单个分区内的房间方块
+     *
+     * @param section  分区下标
+     * @param consumer 接收BlockPos.asLong打包坐标
+     */
+    public void forEachInSection(int section, LongConsumer consumer) {
+        long key = sectionKeys[section];
+        int baseX = SectionPos.sectionToBlockCoord(SectionPos.x(key));
+        int baseY = SectionPos.sectionToBlockCoord(SectionPos.y(key));
+        int baseZ = SectionPos.sectionToBlockCoord(SectionPos.z(key));
+        long[] mask = masks[section];
+        for (int word = 0; word < SECTION_WORDS; word++) {
+            long bits = mask[word];
+            while (bits != 0) {
+                int index = (word << 6) | Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                consumer.accept(BlockPos.asLong(baseX + localX(index), baseY + localY(index), baseZ + localZ(index)));
+            }
+        }
+    }
+
+    /**
+     * 遍历地面方块
+     *
+     * <p>y+1层与y层在掩码中相差4个字，地面掩码按字计算为 mask[w] &amp; ~mask[w-4]，
+     * 分区最底层与下方分区的最顶层比较。</p>
+     *
+     * @param consumer 接收地面方块坐标
+     */
+    public void forEachFloor(CellConsumer consumer) {
+        for (int i = 0; i < sectionKeys.length; i++) {
+            long key = sectionKeys[i];
+            int baseX = SectionPos.sectionToBlockCoord(SectionPos.x(key));
+            int baseY = SectionPos.sectionToBlockCoord(SectionPos.y(key));
+            int baseZ = SectionPos.sectionToBlockCoord(SectionPos.z(key));
+            forEachFloorInSection(i, index -> consumer.accept(baseX + localX(index), baseY + localY(index), baseZ + localZ(index)));
+        }
+    }
+
+    /**
+     * 按分区内下标升序遍历一个分区中的地面方块
+     *
+     * @param section  分区下标
+     * @param consumer 接收分区内下标（y &lt;&lt; 8 | z &lt;&lt; 4 | x）
+     */
+    public void forEachFloorInSection(int section, IntConsumer consumer) {
+        long[] mask = masks[section];
+        long[] belowMask = getSectionMaskByKey(SectionPos.offset(sectionKeys[section], 0, -1, 0));
+
+        for (int word = 0; word < SECTION_WORDS; word++) {
+            long below = word >= 4 ? mask[word - 4] : (belowMask != null ? belowMask[word + SECTION_WORDS - 4] : 0L);
+            long bits = mask[word] & ~below;
+            while (bits != 0) {
+                consumer.accept((word << 6) | Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    /**
+     * 遍历房间边界
+     *
+     * <p>对每个房间方块的6个相邻方块，若相邻方块不属于房间则回调一次。
+     * 同一个边界方块可能因多个相邻房间方块被多次回调。</p>
+     *
+     * @param consumer 接收边界方块坐标
+     */
+    public void forEachBoundary(CellConsumer consumer) {
+        for (int i = 0; i < sectionKeys.length; i++) {
+            long key = sectionKeys[i];
+            int baseX = SectionPos.sectionToBlockCoord(SectionPos.x(key));
+            int baseY = SectionPos.sectionToBlockCoord(SectionPos.y(key));
+            int baseZ = SectionPos.sectionToBlockCoord(SectionPos.z(key));
+            long[] mask = masks[i];
+            for (int word = 0; word < SECTION_WORDS; word++) {
+                long bits = mask[word];
+                while (bits != 0) {
+                    int index = (word << 6) | Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    int lx = localX(index), ly = localY(index), lz = localZ(index);
+                    int x = baseX + lx, y = baseY + ly, z = baseZ + lz;
+
+                    checkNeighbor(consumer, mask, lx < 15, index + 1, x + 1, y, z);
+                    checkNeighbor(consumer, mask, lx > 0, index - 1, x - 1, y, z);
+                    checkNeighbor(consumer, mask, ly < 15, index + 256, x, y + 1, z);
+                    checkNeighbor(consumer, mask, ly > 0, index - 256, x, y - 1, z);
+                    checkNeighbor(consumer, mask, lz < 15, index + 16, x, y, z + 1);
+                    checkNeighbor(consumer, mask, lz > 0, index - 16, x, y, z - 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * 检查单个相邻方块，同分区内直接读取掩码
+     */
+    private void checkNeighbor(CellConsumer consumer, long[] mask, boolean sameSection, int index, int x, int y, int z) {
+        boolean inside = sameSection
+                ? (mask[index >>> 6] & (1L << index)) != 0
+                : contains(x, y, z);
+        if (!inside) {
+            consumer.accept(x, y, z);
+        }
+    }
+
+    /**
+     * 以只读集合视图的形式访问房间方块
+     *
+     * <p>视图不复制数据，contains为O(1)，迭代时按需创建BlockPos。</p>
+     *
+     * @return 只读集合视图
+     */
+    public Set<BlockPos> asSet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<BlockPos> iterator() {
+                return new CellIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof BlockPos pos && RoomShape.this.contains(pos);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "RoomShape{size=" + size + ", sections=" + sectionKeys.length + ", bounds=" + bounds + "}";
+    }
+
+    /**
+     * 方块坐标回调
+     */
+    @FunctionalInterface
+    public interface CellConsumer {
+        void accept(int x, int y, int z);
+    }
+
+    /**
+     * 按分区顺序遍历方块的迭代器
+     */
+    private class CellIterator implements Iterator<BlockPos> {
+        private int section = 0;
+        private int word = 0;
+        private long bits = sectionKeys.length > 0 ? masks[0][0] : 0;
+
+        @Override
+        public boolean hasNext() {
+            if (section >= sectionKeys.length) {
+                return false;
+            }
+
+            while (bits == 0) {
+                if (++word >= SECTION_WORDS) {
+                    word = 0;
+                    if (++section >= sectionKeys.length) {
+                        return false;
+                    }
+                }
+                bits = masks[section][word];
+            }
+            return true;
+        }
+
+        @Override
+        public BlockPos next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            int index = (word << 6) | Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+            long key = sectionKeys[section];
+            return new BlockPos(
+                    SectionPos.sectionToBlockCoord(SectionPos.x(key)) + localX(index),
+                    SectionPos.sectionToBlockCoord(SectionPos.y(key)) + localY(index),
+                    SectionPos.sectionToBlockCoord(SectionPos.z(key)) + localZ(index)
+            );
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.flechazo.modernfurniture.util.room;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+
+/**
+ * 房间有效性校验
+ *
+ * <p>对房间边界方块计算指纹，用于判断持久化的房间在重新加载后是否仍然有效。</p>
+ *
+ * <h2>指纹算法</h2>
+ * <ul>
+ *   <li>遍历每个房间方块的6个相邻非房间方块</li>
+ *   <li>以坐标和{@link PassabilityTable}的可通过性混合得到单个方块的哈希</li>
+ *   <li>所有哈希求和，结果与遍历顺序无关</li>
+ * </ul>
+ *
+ * <p>只有可通过性决定房间形状，草方块变为积雪状态、墙换成另一种实心方块、
+ * 不改变可通过性的活板门开关都不会改变指纹，指纹只在房间形状变化时过期。</p>
+ *
+ * <p>校验成本与房间表面积成正比，远低于重新进行洪水填充。</p>
+ */
+public class RoomValidator {
+
+    /**
+     * 检查房间及其边界所在区块是否均已加载
+     *
+     * @param level 目标世界
+     * @param shape 房间形状
+     * @return 是否可以进行校验
+     */
+    public static boolean isBoundaryLoaded(Level level, RoomShape shape) {
+        BoundingBox bounds = shape.getBounds();
+        return level.hasChunksAt(bounds.minX() - 1, bounds.minZ() - 1, bounds.maxX() + 1, bounds.maxZ() + 1);
+    }
+
+    /**
+     * 计算房间边界指纹
+     *
+     * @param level 目标世界，调用前应确认{@link #isBoundaryLoaded}
+     * @param shape 房间形状
+     * @return 边界方块状态的指纹
+     */
+    public static long boundaryHash(Level level, RoomShape shape) {
+        BlockPos.MutableBlockPos cursor = new BlockPos.MutableBlockPos();
+        long[] hash = new long[]{shape.size()};
+
+        shape.forEachBoundary((x, y, z) -> {
+            int passable = PassabilityTable.isPassable(level.getBlockState(cursor.set(x, y, z))) ? 1 : 0;
+            hash[0] += HashCommon.mix(BlockPos.asLong(x, y, z) * 31 + passable);
+        });
+
+        return hash[0];
+    }
+}
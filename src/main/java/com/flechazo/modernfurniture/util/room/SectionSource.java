@@ -0,0 +1,50 @@
+package com.flechazo.modernfurniture.util.room;
+
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * 分区方块数据源
+ *
+ * <p>按分区坐标一次性解析方块容器，调用方随后使用0..15的本地坐标读取方块。</p>
+ */
+@FunctionalInterface
+public interface SectionSource {
+
+    /**
+     * 获取分区的方块状态容器
+     *
+     * @param sectionX 分区X坐标
+     * @param sectionY 分区Y坐标
+     * @param sectionZ 分区Z坐标
+     * @return 方块状态容器，若区块未加载或超出世界高度返回null
+     */
+    @Nullable
+    PalettedContainer<BlockState> getStates(int sectionX, int sectionY, int sectionZ);
+
+    /**
+     * 创建直接读取已加载区块的数据源
+     *
+     * @param level 目标世界，只能在其所属线程上使用
+     * @return 分区数据源，不会触发区块加载
+     */
+    static SectionSource of(Level level) {
+        return (sectionX, sectionY, sectionZ) -> {
+            if (sectionY < level.getMinSection() || sectionY >= level.getMaxSection()) {
+                return null;
+            }
+
+            LevelChunk chunk = level.getChunkSource().getChunkNow(sectionX, sectionZ);
+            if (chunk == null) {
+                return null;
+            }
+
+            LevelChunkSection section = chunk.getSection(chunk.getSectionIndexFromSectionY(sectionY));
+            return section.getStates();
+        };
+    }
+}
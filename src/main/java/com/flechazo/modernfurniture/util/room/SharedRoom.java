@@ -0,0 +1,264 @@
+package com.flechazo.modernfurniture.util.room;
+
+import com.flechazo.modernfurniture.ModernFurniture;
+import com.flechazo.modernfurniture.config.module.SnowGenerationConfig;
+import com.flechazo.modernfurniture.util.snow.SnowManager;
+import com.flechazo.modernfurniture.util.snow.SnowStats;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.objects.ReferenceLinkedOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 多台空调共享的房间
+ *
+ * <p>由{@link RoomRegistry}创建和持有，同一房间内的所有空调共用一份房间模型和一个积雪管理器。</p>
+ *
+ * <h2>生命周期</h2>
+ * <ul>
+ *   <li>第一台空调检测到房间后注册，其余空调直接加入</li>
+ *   <li>成员按引用计数，最后一个成员离开时关闭积雪管理器并注销房间</li>
+ *   <li>房间失效时由注册表解散，并通知所有成员重新检测</li>
+ * </ul>
+ *
+ * <h2>制冷功率</h2>
+ * <p>积雪周期间隔按成员数量缩短，房间内的空调越多降雪越快。</p>
+ */
+public class SharedRoom {
+    private static final long PERFORMANCE_LOG_INTERVAL = 60000;
+
+    private final int id;
+    private final RoomRegistry registry;
+    private final ServerLevel level;
+    private final RoomModel model;
+    private final Set<RoomMember> members = new ReferenceLinkedOpenHashSet<>();
+
+    private RoomShape shape;
+    private long boundaryHash;
+    private boolean boundaryHashDirty = false;
+    private SnowManager snowManager = null;
+    private long lastPerformanceLog = 0;
+
+    SharedRoom(int id, RoomRegistry registry, ServerLevel level, BlockPos anchor, RoomShape shape, long boundaryHash) {
+        this.id = id;
+        this.registry = registry;
+        this.level = level;
+        this.shape = shape;
+        this.boundaryHash = boundaryHash;
+        this.model = new RoomModel(level, anchor, shape);
+
+        if (SnowGenerationConfig.enableSnow) {
+            this.snowManager = new SnowManager(level, shape);
+        }
+    }
+
+    /**
+     * 加入房间
+     *
+     * @param member 新成员
+     */
+    public void addMember(RoomMember member) {
+        if (members.add(member)) {
+            updateCoolingSources();
+        }
+    }
+
+    /**
+     * 离开房间，最后一个成员离开时房间被注销，积雪逐层融化
+     *
+     * @param member 离开的成员
+     */
+    public void removeMember(RoomMember member) {
+        removeMember(member, false);
+    }
+
+    /**
+     * 离开房间，最后一个成员离开时房间被注销
+     *
+     * @param member   离开的成员
+     * @param keepSnow 房间注销时是否保留积雪，区块卸载时保留，等待房间再次形成后领回
+     */
+    public void removeMember(RoomMember member, boolean keepSnow) {
+        if (members.remove(member)) {
+            if (members.isEmpty()) {
+                registry.unregister(this, keepSnow);
+            } else {
+                updateCoolingSources();
+            }
+        }
+    }
+
+    /**
+     * 将房间注册前发生的方块变化交给房间模型，在下一次推进时处理
+     *
+     * @param changes BlockPos.asLong打包坐标
+     */
+    public void markChanged(LongList changes) {
+        BlockPos.MutableBlockPos cursor = new BlockPos.MutableBlockPos();
+        for (int i = 0; i < changes.size(); i++) {
+            markChanged(cursor.set(changes.getLong(i)));
+        }
+    }
+
+    /**
+     * 位置属于房间或与房间相邻时，交给房间模型在下一次推进时处理
+     *
+     * @param pos 发生变化的位置
+     */
+    void markChanged(BlockPos pos) {
+        if (model.isAffectedBy(pos)) {
+            model.markChanged(pos);
+        }
+    }
+
+    /**
+     * 每个世界刻调用一次，应用方块变化并推进积雪
+     *
+     * @param currentTime 当前游戏时间
+     * @return 房间模型的变化结果
+     */
+    RoomModel.ChangeResult tick(long currentTime) {
+        RoomModel.ChangeResult result = model.processPendingChanges();
+        if (result == RoomModel.ChangeResult.INVALID) {
+            return result;
+        }
+
+        if (result == RoomModel.ChangeResult.UPDATED) {
+            shape = model.getShape();
+            boundaryHashDirty = true;
+        }
+        // 指纹在世界刻中计算，保存时不再读取世界；边界未加载时等待后续的刻
+        if (boundaryHashDirty) {
+            updateBoundaryHash();
+        }
+
+        if (result == RoomModel.ChangeResult.UPDATED) {
+            if (snowManager != null) {
+                snowManager.updateRoom(shape);
+            }
+            for (RoomMember member : List.copyOf(members)) {
+                member.onRoomChanged(this);
+            }
+        }
+
+        if (snowManager != null && SnowGenerationConfig.enableSnow) {
+            try {
+                snowManager.setCoolingUnits(members.size());
+                snowManager.performSnowingAsync(currentTime);
+                logPerformanceStats(currentTime);
+            } catch (Exception e) {
+                ModernFurniture.LOGGER.warn("Failed to perform snow in shared room", e);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * 释放房间持有的资源
+     *
+     * @param keepSnow 是否保留积雪，保留时积雪记录转入世界存档
+     */
+    void shutdown(boolean keepSnow) {
+        model.shutdown();
+
+        if (snowManager != null) {
+            try {
+                if (keepSnow) {
+                    snowManager.release();
+                } else {
+                    snowManager.shutdown();
+                }
+            } catch (Exception e) {
+                ModernFurniture.LOGGER.warn("Failed to stop room blocks snow manager", e);
+            }
+            snowManager = null;
+        }
+    }
+
+    /**
+     * 更新边界指纹，边界区块未加载时保持原状
+     */
+    private void updateBoundaryHash() {
+        if (RoomValidator.isBoundaryLoaded(level, shape)) {
+            boundaryHash = RoomValidator.boundaryHash(level, shape);
+            boundaryHashDirty = false;
+        }
+    }
+
+    /**
+     * 房间形状变化后边界区块一直未加载时，指纹仍对应旧形状
+     *
+     * @return 指纹是否过期
+     */
+    public boolean isBoundaryHashStale() {
+        return boundaryHashDirty;
+    }
+
+    /**
+     * 重新创建积雪管理器，已有积雪会被清除
+     */
+    public void refreshSnowManager() {
+        if (snowManager != null) {
+            snowManager.clearAllSnow();
+            snowManager.shutdown();
+            snowManager = new SnowManager(level, shape);
+            updateCoolingSources();
+        }
+    }
+
+    private void updateCoolingSources() {
+        if (snowManager != null) {
+            snowManager.setCoolingSources(members.stream().map(RoomMember::getBlockPos).toList());
+        }
+    }
+
+    private void logPerformanceStats(long currentTime) {
+        if (currentTime - lastPerformanceLog > PERFORMANCE_LOG_INTERVAL) {
+            lastPerformanceLog = currentTime;
+            ModernFurniture.LOGGER.debug("降雪性能统计: 房间{}, {}台空调, {}", id, members.size(), snowManager.getSnowStats());
+        }
+    }
+
+    List<RoomMember> getMembers() {
+        return List.copyOf(members);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public RoomShape getShape() {
+        return shape;
+    }
+
+    public long getBoundaryHash() {
+        return boundaryHash;
+    }
+
+    public int getMemberCount() {
+        return members.size();
+    }
+
+    public SnowStats getSnowStats() {
+        return snowManager != null ? snowManager.getSnowStats() : null;
+    }
+
+    public int getSnowCycles() {
+        return snowManager != null ? snowManager.getSnowCycles() : 0;
+    }
+
+    /**
+     * 恢复空调存档中记录的积雪周期数
+     *
+     * @param snowCycles 积雪周期数
+     */
+    public void restoreSnowCycles(int snowCycles) {
+        if (snowManager != null) {
+            snowManager.restoreSnowCycles(snowCycles);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.flechazo.modernfurniture.util.snow;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * 下标抽样器
+ *
+ * <p>从{@code [0, size)}中抽取下标，均匀抽样或按权重抽样，每次抽取O(1)。</p>
+ *
+ * <h2>实现</h2>
+ * <ul>
+ *   <li><b>均匀：</b>不存表，不放回抽样使用稀疏Fisher-Yates，只记录被交换过的位置</li>
+ *   <li><b>加权：</b>Vose别名表，构建O(n)；不放回抽样时丢弃重复结果，
+ *   尝试次数超过{@link #MAX_ATTEMPT_FACTOR}倍大小后停止</li>
+ * </ul>
+ *
+ * <p>实例不可变，可以在线程之间安全共享。</p>
+ */
+public final class AliasSampler {
+    private static final int MAX_ATTEMPT_FACTOR = 4;
+
+    private final int size;
+    // 均匀抽样时为null
+    private final float[] probability;
+    private final int[] alias;
+
+    private AliasSampler(int size, float[] probability, int[] alias) {
+        this.size = size;
+        this.probability = probability;
+        this.alias = alias;
+    }
+
+    /**
+     * 创建均匀抽样器
+     *
+     * @param size 下标数量
+     * @return 抽样器
+     */
+    public static AliasSampler uniform(int size) {
+        return new AliasSampler(size, null, null);
+    }
+
+    /**
+     * 按权重构建别名表（Vose算法）
+     *
+     * @param weights 每个下标的非负权重，全部为0时退化为均匀抽样
+     * @return 抽样器
+     */
+    public static AliasSampler weighted(float[] weights) {
+        int n = weights.length;
+        double total = 0;
+        for (float weight : weights) {
+            total += Math.max(0, weight);
+        }
+        if (n == 0 || total <= 0) {
+            return uniform(n);
+        }
+
+        float[] probability = new float[n];
+        int[] alias = new int[n];
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0, largeCount = 0;
+
+        for (int i = 0; i < n; i++) {
+            scaled[i] = Math.max(0, weights[i]) * n / total;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = (float) scaled[less];
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // 剩余项只因浮点误差偏离1
+        while (largeCount > 0) {
+            probability[large[--largeCount]] = 1.0f;
+        }
+        while (smallCount > 0) {
+            probability[small[--smallCount]] = 1.0f;
+        }
+
+        return new AliasSampler(n, probability, alias);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isWeighted() {
+        return probability != null;
+    }
+
+    /**
+     * 有放回地抽取一个下标
+     *
+     * @param random 随机数生成器
+     * @return 下标
+     */
+    public int sample(Random random) {
+        int column = random.nextInt(size);
+        if (probability == null) {
+            return column;
+        }
+        return random.nextFloat() < probability[column] ? column : alias[column];
+    }
+
+    /**
+     * 不放回地依次抽取下标
+     *
+     * <p>每个下标最多交给consumer一次，consumer返回false时停止。
+     * 成本与实际抽取的数量成正比，而不是与大小成正比。</p>
+     *
+     * @param random   随机数生成器
+     * @param consumer 接收下标，返回是否继续
+     */
+    public void sampleDistinct(Random random, IntPredicate consumer) {
+        if (size == 0) {
+            return;
+        }
+
+        if (probability == null) {
+            // 稀疏Fisher-Yates：swapped记录位置i当前存放的下标
+            Int2IntOpenHashMap swapped = new Int2IntOpenHashMap();
+            for (int i = 0; i < size; i++) {
+                int j = i + random.nextInt(size - i);
+                int picked = swapped.getOrDefault(j, j);
+                swapped.put(j, swapped.getOrDefault(i, i));
+                if (!consumer.test(picked)) {
+                    return;
+                }
+            }
+            return;
+        }
+
+        IntOpenHashSet seen = new IntOpenHashSet();
+        long maxAttempts = (long) size * MAX_ATTEMPT_FACTOR;
+        for (long attempt = 0; attempt < maxAttempts && seen.size() < size; attempt++) {
+            int picked = sample(random);
+            if (seen.add(picked) && !consumer.test(picked)) {
+                return;
+            }
+        }
+    }
+}
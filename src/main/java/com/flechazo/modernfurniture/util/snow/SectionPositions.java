@@ -0,0 +1,141 @@
+package com.flechazo.modernfurniture.util.snow;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+
+import java.util.Arrays;
+
+/**
+ * 单个分区内的方块位置集合
+ *
+ * <p>以升序排列的分区内下标（{@code y << 8 | z << 4 | x}）存储，每个位置只占两个字节。
+ * 实例不可变，缓存直接把同一个实例交给所有读取方，命中时不需要复制。</p>
+ *
+ * <h2>访问方式</h2>
+ * <ul>
+ *   <li>按序号读取坐标分量或打包坐标，不创建对象</li>
+ *   <li>{@link #getPos}只在确实需要{@link BlockPos}时创建</li>
+ *   <li>{@link #contains}使用二分查找</li>
+ *   <li>{@link #getSampler}按序号抽样，可以附带按位置计算的权重</li>
+ * </ul>
+ */
+public final class SectionPositions {
+    public static final SectionPositions EMPTY = new SectionPositions(0, 0, 0, new short[0], AliasSampler.uniform(0));
+
+    private final int originX, originY, originZ;
+    private final short[] indices;
+    private final AliasSampler sampler;
+
+    private SectionPositions(int originX, int originY, int originZ, short[] indices, AliasSampler sampler) {
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.indices = indices;
+        this.sampler = sampler;
+    }
+
+    /**
+     * 从升序的分区内下标创建集合
+     *
+     * @param sectionPos 分区坐标
+     * @param indices    分区内下标缓冲区，只读取前count个
+     * @param count      位置数量
+     * @return 位置集合，缓冲区会被复制
+     */
+    public static SectionPositions of(SectionPos sectionPos, short[] indices, int count) {
+        if (count == 0) {
+            return EMPTY;
+        }
+        return new SectionPositions(sectionPos.minBlockX(), sectionPos.minBlockY(), sectionPos.minBlockZ(),
+                Arrays.copyOf(indices, count), AliasSampler.uniform(count));
+    }
+
+    /**
+     * 创建共享相同位置、按权重抽样的集合
+     *
+     * @param weights 位置权重
+     * @return 新集合，权重相同时返回自身
+     */
+    public SectionPositions withWeights(SnowWeights weights) {
+        if (weights.isUniform() || indices.length == 0) {
+            return this;
+        }
+        return new SectionPositions(originX, originY, originZ, indices, weights.createSampler(this));
+    }
+
+    /**
+     * 计算方块在分区内的下标
+     */
+    public static short localIndex(int x, int y, int z) {
+        return (short) ((y & 15) << 8 | (z & 15) << 4 | (x & 15));
+    }
+
+    public int size() {
+        return indices.length;
+    }
+
+    public boolean isEmpty() {
+        return indices.length == 0;
+    }
+
+    public int getX(int i) {
+        return originX + (indices[i] & 15);
+    }
+
+    public int getY(int i) {
+        return originY + (indices[i] >> 8 & 15);
+    }
+
+    public int getZ(int i) {
+        return originZ + (indices[i] >> 4 & 15);
+    }
+
+    /**
+     * 获取第i个位置的打包坐标
+     *
+     * @return BlockPos.asLong格式
+     */
+    public long asLong(int i) {
+        return BlockPos.asLong(getX(i), getY(i), getZ(i));
+    }
+
+    /**
+     * 创建第i个位置的方块坐标
+     */
+    public BlockPos getPos(int i) {
+        return new BlockPos(getX(i), getY(i), getZ(i));
+    }
+
+    /**
+     * 写入第i个位置到可变坐标
+     */
+    public BlockPos.MutableBlockPos getPos(int i, BlockPos.MutableBlockPos cursor) {
+        return cursor.set(getX(i), getY(i), getZ(i));
+    }
+
+    /**
+     * 检查方块是否属于集合
+     */
+    public boolean contains(int x, int y, int z) {
+        if (indices.length == 0 || (x - originX) >>> 4 != 0 || (y - originY) >>> 4 != 0 || (z - originZ) >>> 4 != 0) {
+            return false;
+        }
+        return Arrays.binarySearch(indices, localIndex(x, y, z)) >= 0;
+    }
+
+    /**
+     * 获取按序号抽样的抽样器
+     */
+    public AliasSampler getSampler() {
+        return sampler;
+    }
+
+    /**
+     * 估算内存占用，加权时包含别名表
+     *
+     * @return 字节数
+     */
+    public long estimatedBytes() {
+        return 48L + indices.length * (sampler.isWeighted() ? 10L : 2L);
+    }
+}
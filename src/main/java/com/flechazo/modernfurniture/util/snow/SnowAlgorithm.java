@@ -1,13 +1,14 @@
 package com.flechazo.modernfurniture.util.snow;
 
 import com.flechazo.modernfurniture.ModernFurniture;
+import com.flechazo.modernfurniture.config.module.SnowGenerationConfig;
+import com.flechazo.modernfurniture.util.room.LevelSnapshot;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.SectionPos;
-import net.minecraft.server.level.ServerLevel;
 
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -25,8 +26,9 @@ import java.util.concurrent.atomic.AtomicInteger;
  * </ul>
  */
 public class SnowAlgorithm {
+    private static final int MAX_DRAW_FACTOR = 4; // 单个分区最多抽取积雪数量的倍数
+
     private final long randomSeed;
-    private final ExecutorService executor;
     private final DynamicParameters dynamicParams;
     private final SnowPlacementChecker placementChecker;
 
@@ -38,7 +40,6 @@ public class SnowAlgorithm {
      */
     public SnowAlgorithm(long randomSeed, int roomSize) {
         this.randomSeed = randomSeed;
-        this.executor = ForkJoinPool.commonPool();
         this.dynamicParams = new DynamicParameters(roomSize);
         this.placementChecker = new SnowPlacementChecker(randomSeed);
     }
@@ -48,14 +49,16 @@ public class SnowAlgorithm {
      *
      * @param sectionManager  分区管理器
      * @param cacheManager    缓存管理器
-     * @param level           服务器世界
-     * @param snowedPositions 已有积雪位置
+     * @param level           服务器线程上复制的世界快照，计算过程不访问世界本身
+     * @param snowedCells     已有积雪位置
+     * @param weights         位置权重
      * @return 积雪操作列表
      */
     public List<SnowOperation> calculateSnowOperations(SnowSectionManager sectionManager,
                                                        SnowCacheManager cacheManager,
-                                                       ServerLevel level,
-                                                       Set<BlockPos> snowedPositions) {
+                                                       LevelSnapshot level,
+                                                       SnowedCells snowedCells,
+                                                       SnowWeights weights) {
         List<SnowOperation> operations = new ArrayList<>();
         long timestamp = System.currentTimeMillis();
 
@@ -66,16 +69,16 @@ public class SnowAlgorithm {
             List<SectionPos> sectionsToProcess = sectionManager.selectSectionsForProcessing(
                     dynamicParams.densityFactor, random);
 
+            SnowFloorIndex floorIndex = sectionManager.getFloorIndex();
             for (SectionPos sectionPos : sectionsToProcess) {
-                Set<BlockPos> sectionBlocks = sectionManager.getSectionBlocks(sectionPos);
-                Set<BlockPos> sectionPositions = cacheManager.getSectionValidPositions(
-                        sectionPos, sectionBlocks, level, placementChecker);
+                SectionPositions sectionPositions = cacheManager.getSectionValidPositions(
+                        sectionPos, floorIndex, weights, level, placementChecker);
 
                 if (sectionPositions.isEmpty()) continue;
 
                 int sectionSnowAmount = calculateSectionSnowAmount(sectionPositions.size());
                 List<SnowOperation> sectionOps = generateSectionOperations(
-                        sectionPositions, sectionSnowAmount, timestamp, snowedPositions);
+                        sectionPositions, sectionSnowAmount, timestamp, snowedCells);
                 operations.addAll(sectionOps);
 
                 // 限制总操作数
@@ -92,22 +95,60 @@ public class SnowAlgorithm {
     }
 
     /**
-     * 更新动态参数
+     * 计算多个虚拟周期的补齐操作
      *
-     * @param currentDensity 当前密度
-     * @param avgProcessTime 平均处理时间
+     * <p>不逐周期模拟，而是按期望值一次算出：每个分区在一个周期内被选中的概率乘以选中时的期望积雪数量，
+     * 再乘以周期数得到期望层数L。L层雪落在n个有效位置上时，期望覆盖的不同位置数为
+     * {@code n * (1 - e^(-L/n))}，超出覆盖率上限的部分不放置，其余层数叠加到有积雪的位置上。</p>
+     *
+     * @param sectionManager  分区管理器
+     * @param cacheManager    缓存管理器
+     * @param level           服务器线程上复制的世界快照
+     * @param snowedCells     已有积雪位置
+     * @param weights         位置权重
+     * @param cycles          需要补齐的周期数
+     * @return 积雪操作列表
      */
-    public void updateParameters(double currentDensity, double avgProcessTime) {
-        dynamicParams.updateParameters(currentDensity, avgProcessTime);
+    public List<SnowOperation> calculateCatchUpOperations(SnowSectionManager sectionManager,
+                                                          SnowCacheManager cacheManager,
+                                                          LevelSnapshot level,
+                                                          SnowedCells snowedCells,
+                                                          SnowWeights weights,
+                                                          int cycles) {
+        List<SnowOperation> operations = new ArrayList<>();
+        long timestamp = System.currentTimeMillis();
+
+        try {
+            Random random = new Random(randomSeed + Thread.currentThread().getId());
+            double selection = Math.min(1.0, dynamicParams.densityFactor * 0.3);
+
+            SnowFloorIndex floorIndex = sectionManager.getFloorIndex();
+            for (SectionPos sectionPos : sectionManager.getActiveSections()) {
+                SectionPositions sectionPositions = cacheManager.getSectionValidPositions(
+                        sectionPos, floorIndex, weights, level, placementChecker);
+
+                if (sectionPositions.isEmpty()) continue;
+
+                double expectedLayers = cycles * selection * expectedSectionSnowAmount(sectionPositions.size());
+                operations.addAll(generateCatchUpOperations(
+                        sectionPositions, expectedLayers, timestamp, snowedCells, random));
+            }
+
+        } catch (Exception e) {
+            ModernFurniture.LOGGER.warn("积雪补齐计算出错", e);
+        }
+
+        return operations;
     }
 
     /**
-     * 获取执行器
+     * 更新动态参数
      *
-     * @return 执行器
+     * @param currentDensity 当前密度
+     * @param avgProcessTime 平均处理时间
      */
-    public ExecutorService getExecutor() {
-        return executor;
+    public void updateParameters(double currentDensity, double avgProcessTime) {
+        dynamicParams.updateParameters(currentDensity, avgProcessTime);
     }
 
     /**
@@ -130,90 +171,136 @@ public class SnowAlgorithm {
         return Math.min(maxAmount, baseAmount + poissonValue);
     }
 
+    /**
+     * 分区被选中时的期望积雪数量，与{@link #calculateSectionSnowAmount}一致
+     */
+    private double expectedSectionSnowAmount(int validPositions) {
+        int baseAmount = Math.max(1, (int) (validPositions * 0.1 * dynamicParams.spatialVariance));
+        int maxAmount = Math.max(1, validPositions / 3);
+        return Math.min(maxAmount, baseAmount + Math.max(0, dynamicParams.poissonLambda));
+    }
+
+    /**
+     * 按期望层数生成分区的补齐操作
+     *
+     * <p>先不放回地抽取新雪位置，再按权重有放回地抽取叠加位置，只叠加到已有或本次放置积雪的位置上。</p>
+     */
+    private List<SnowOperation> generateCatchUpOperations(SectionPositions positions,
+                                                          double expectedLayers,
+                                                          long timestamp,
+                                                          SnowedCells snowedCells,
+                                                          Random random) {
+        int n = positions.size();
+        BlockPos.MutableBlockPos cursor = new BlockPos.MutableBlockPos();
+
+        int existing = 0;
+        for (int i = 0; i < n; i++) {
+            if (snowedCells.contains(positions.getPos(i, cursor))) {
+                existing++;
+            }
+        }
+
+        int targetCells = (int) Math.round(n * (1.0 - Math.exp(-expectedLayers / n)));
+        if (SnowGenerationConfig.snowCoverageRatio > 0) {
+            targetCells = Math.min(targetCells, (int) (n * SnowGenerationConfig.snowCoverageRatio));
+        }
+        int newQuota = Math.max(0, targetCells - existing);
+        int stackLayers = (int) Math.min((long) n * 7, Math.max(0, Math.round(expectedLayers) - newQuota));
+
+        List<SnowOperation> operations = new ArrayList<>(newQuota + stackLayers);
+        IntOpenHashSet placed = new IntOpenHashSet(newQuota);
+
+        if (newQuota > 0) {
+            positions.getSampler().sampleDistinct(random, i -> {
+                if (!snowedCells.contains(positions.getPos(i, cursor))) {
+                    placed.add(i);
+                    operations.add(new SnowOperation(positions.getPos(i), SnowOperation.OperationType.PLACE_NEW, 1, timestamp));
+                }
+                return placed.size() < newQuota;
+            });
+        }
+
+        if (existing + placed.size() > 0) {
+            for (int layer = 0; layer < stackLayers; layer++) {
+                int i = positions.getSampler().sample(random);
+                if (placed.contains(i) || snowedCells.contains(positions.getPos(i, cursor))) {
+                    operations.add(new SnowOperation(positions.getPos(i), SnowOperation.OperationType.ADD_LAYER, 1, timestamp));
+                }
+            }
+        }
+
+        return operations;
+    }
+
     /**
      * 生成分区操作
      *
+     * <p>通过位置集合的抽样器不放回地抽取位置，已有积雪的位置计入叠加配额，其余计入新雪配额。
+     * 两个配额都满、或叠加与新雪合计已达到积雪数量时停止，叠加候选不足时由多抽到的新雪补足。
+     * 抽取次数不超过积雪数量的{@link #MAX_DRAW_FACTOR}倍，几乎全部积雪或几乎没有积雪的分区
+     * 成本同样与操作数量成正比，配额抽不满时本周期少放一些。</p>
+     *
      * @param positions       位置集合
      * @param snowAmount      积雪数量
      * @param timestamp       时间戳
-     * @param snowedPositions 已有积雪位置
+     * @param snowedCells     已有积雪位置
      * @return 操作列表
      */
-    private List<SnowOperation> generateSectionOperations(Set<BlockPos> positions,
+    private List<SnowOperation> generateSectionOperations(SectionPositions positions,
                                                           int snowAmount,
                                                           long timestamp,
-                                                          Set<BlockPos> snowedPositions) {
-        List<SnowOperation> operations = new ArrayList<>();
+                                                          SnowedCells snowedCells) {
+        List<SnowOperation> operations = new ArrayList<>(snowAmount);
         Random random = new Random(randomSeed + Thread.currentThread().getId());
 
-        List<BlockPos> priorityPositions = positions.stream()
-                .filter(snowedPositions::contains)
-                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
-
-        List<BlockPos> newPositions = positions.stream()
-                .filter(pos -> !snowedPositions.contains(pos))
-                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
-
-        // 高级随机化策略
-        advancedShuffle(priorityPositions, random);
-        advancedShuffle(newPositions, random);
-
-        int operationCount = 0;
-
         // 动态叠加比例
         double stackRatio = 0.4 + (random.nextGaussian() * 0.1 * dynamicParams.spatialVariance);
         stackRatio = Math.max(0.2, Math.min(0.7, stackRatio));
 
-        int priorityCount = (int) (snowAmount * stackRatio);
-        priorityCount = Math.min(priorityCount, priorityPositions.size());
+        int stackQuota = (int) (snowAmount * stackRatio);
+        int newQuota = snowAmount - stackQuota;
+        IntArrayList stackPositions = new IntArrayList(stackQuota);
+        IntArrayList newPositions = new IntArrayList(snowAmount);
+        BlockPos.MutableBlockPos cursor = new BlockPos.MutableBlockPos();
+        int[] drawsLeft = {snowAmount * MAX_DRAW_FACTOR};
+
+        positions.getSampler().sampleDistinct(random, i -> {
+            if (snowedCells.contains(positions.getPos(i, cursor))) {
+                if (stackPositions.size() < stackQuota) {
+                    stackPositions.add(i);
+                }
+            } else if (newPositions.size() < snowAmount) {
+                // 超出新雪配额的部分留作叠加候选不足时的补充
+                newPositions.add(i);
+            }
+            return --drawsLeft[0] > 0
+                    && stackPositions.size() + newPositions.size() < snowAmount
+                    && (stackPositions.size() < stackQuota || newPositions.size() < newQuota);
+        });
 
         // 添加叠加操作
-        for (int i = 0; i < priorityCount && operationCount < snowAmount; i++) {
+        for (int i = 0; i < stackPositions.size(); i++) {
             operations.add(new SnowOperation(
-                    priorityPositions.get(i),
+                    positions.getPos(stackPositions.getInt(i)),
                     SnowOperation.OperationType.ADD_LAYER,
-                    0,
+                    1,
                     timestamp
             ));
-            operationCount++;
         }
 
         // 添加新雪操作
-        for (BlockPos pos : newPositions) {
-            if (operationCount >= snowAmount) break;
+        for (int i = 0; i < newPositions.size() && operations.size() < snowAmount; i++) {
             operations.add(new SnowOperation(
-                    pos,
+                    positions.getPos(newPositions.getInt(i)),
                     SnowOperation.OperationType.PLACE_NEW,
                     1,
                     timestamp
             ));
-            operationCount++;
         }
 
         return operations;
     }
 
-    /**
-     * 高级随机化
-     *
-     * @param list   列表
-     * @param random 随机数生成器
-     */
-    private void advancedShuffle(List<BlockPos> list, Random random) {
-        if (list.size() <= 1) return;
-
-        // 多层随机化
-        for (int phase = 0; phase < 2; phase++) {
-            for (int i = list.size() - 1; i > 0; i--) {
-                // 空间相关性的随机选择
-                int maxDistance = Math.min(i, (int) (i * dynamicParams.spatialVariance * 0.5));
-                int j = Math.max(0, i - maxDistance + random.nextInt(maxDistance + 1));
-
-                Collections.swap(list, i, j);
-            }
-        }
-    }
-
     /**
      * 生成泊松分布随机数
      *
@@ -0,0 +1,95 @@
+package com.flechazo.modernfurniture.util.snow;
+
+import com.flechazo.modernfurniture.ModernFurniture;
+import com.flechazo.modernfurniture.config.module.SnowGenerationConfig;
+
+import java.util.ArrayDeque;
+
+/**
+ * 全服积雪写入预算
+ *
+ * <p>所有世界的积雪管理器共享每刻的方块写入数量与时间预算，
+ * 计算完成的积雪操作不再一次性写入，而是由本调度器分摊到后续的服务器刻。</p>
+ *
+ * <h2>调度策略</h2>
+ * <ul>
+ *   <li>按差额轮询（Deficit Round Robin）在有待写入操作的管理器之间循环</li>
+ *   <li>每轮为管理器累加{@link #QUANTUM}乘以其权重（制冷空调数量）的额度，最多写入额度内的操作</li>
+ *   <li>写入总数达到{@link SnowGenerationConfig#snowWritesPerTick}或耗时超过
+ *   {@link SnowGenerationConfig#snowBudgetMicros}时停止，剩余操作下一刻继续</li>
+ *   <li>操作写完的管理器离开队列，额度清零</li>
+ * </ul>
+ *
+ * <p>只能在服务器线程上访问。</p>
+ */
+public class SnowBudget {
+    private static final int QUANTUM = 16;
+    private static final ArrayDeque<SnowManager> ACTIVE = new ArrayDeque<>();
+
+    /**
+     * 将有待写入操作的管理器加入调度
+     *
+     * @param manager 积雪管理器
+     */
+    static void schedule(SnowManager manager) {
+        if (!manager.budgetScheduled) {
+            manager.budgetScheduled = true;
+            manager.budgetDeficit = 0;
+            ACTIVE.addLast(manager);
+        }
+    }
+
+    /**
+     * 移出调度，管理器关闭或清除积雪时调用
+     *
+     * @param manager 积雪管理器
+     */
+    static void remove(SnowManager manager) {
+        if (manager.budgetScheduled) {
+            ACTIVE.remove(manager);
+            manager.budgetScheduled = false;
+            manager.budgetDeficit = 0;
+        }
+    }
+
+    /**
+     * 在预算内写入积雪，每个服务器刻调用一次
+     */
+    public static void tick() {
+        if (ACTIVE.isEmpty()) {
+            return;
+        }
+
+        long deadline = System.nanoTime() + SnowGenerationConfig.snowBudgetMicros * 1_000L;
+        int remainingWrites = SnowGenerationConfig.snowWritesPerTick;
+
+        while (!ACTIVE.isEmpty() && remainingWrites > 0 && System.nanoTime() < deadline) {
+            SnowManager manager = ACTIVE.pollFirst();
+            manager.budgetDeficit += QUANTUM * manager.getCoolingUnits();
+
+            int written;
+            try {
+                written = manager.executeReadyOperations(Math.min(manager.budgetDeficit, remainingWrites));
+            } catch (Exception e) {
+                ModernFurniture.LOGGER.warn("积雪写入失败", e);
+                manager.budgetScheduled = false;
+                manager.budgetDeficit = 0;
+                continue;
+            }
+
+            manager.budgetDeficit -= written;
+            remainingWrites -= written;
+
+            if (manager.hasReadyOperations()) {
+                ACTIVE.addLast(manager);
+            } else {
+                manager.budgetScheduled = false;
+                manager.budgetDeficit = 0;
+            }
+        }
+    }
+
+    public static int getActiveCount() {
+        return ACTIVE.size();
+    }
+}
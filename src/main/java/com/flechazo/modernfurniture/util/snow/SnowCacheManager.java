@@ -1,12 +1,12 @@
 package com.flechazo.modernfurniture.util.snow;
 
 import com.flechazo.modernfurniture.ModernFurniture;
+import com.flechazo.modernfurniture.config.module.SnowGenerationConfig;
+import com.flechazo.modernfurniture.util.room.LevelSnapshot;
+import com.flechazo.modernfurniture.util.room.RoomShape;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.SectionPos;
-import net.minecraft.server.level.ServerLevel;
-import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.block.state.BlockState;
-import net.minecraft.world.level.chunk.LevelChunk;
 
 import java.util.*;
 import java.util.concurrent.*;
@@ -23,66 +23,68 @@ import java.util.concurrent.*;
  *   <li>批量失效处理</li>
  *   <li>缓存统计和监控</li>
  * </ul>
+ *
+ * <h2>LRU实现</h2>
+ * <p>使用访问顺序的{@link LinkedHashMap}，命中时移动到队尾，淘汰时移除队首，均为O(1)。
+ * 缓存容量按条目的估算字节数限制，淘汰一直进行到总量回到{@link #MAX_CACHE_BYTES}以内。
+ * 工作线程、调度线程与服务器线程通过同一把锁访问缓存。</p>
  */
 public class SnowCacheManager {
-    private static final int MAX_CACHE_SIZE = 64;
+    private static final long MAX_CACHE_BYTES = 4L * 1024 * 1024; // 4MB
+    private static final int ENTRY_OVERHEAD_BYTES = 96; // 条目、键与链表节点
     private static final long CACHE_TTL_MS = 30000; // 30秒TTL
-    private static final long CACHE_INVALIDATION_BATCH_DELAY = 100; // 100ms批量失效延迟
     private static final int MAX_INVALIDATION_BATCH_SIZE = 20; // 最大批量失效数量
 
-    private final Map<SectionPos, CacheEntry> validPositionCache;
-    private final Queue<SectionPos> cacheAccessOrder;
+    private final LinkedHashMap<SectionPos, CacheEntry> validPositionCache;
     private final Set<SectionPos> pendingInvalidations;
     private final Map<SectionPos, Long> sectionChangeFrequency;
-    private final ScheduledExecutorService scheduledExecutor;
-    private final ScheduledFuture<?> batchInvalidationTask;
+
+    // 缓存统计，受validPositionCache的锁保护
+    private long estimatedBytes = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
 
     /**
      * 构造缓存管理器
      */
     public SnowCacheManager() {
-        this.validPositionCache = new ConcurrentHashMap<>();
-        this.cacheAccessOrder = new ConcurrentLinkedQueue<>();
+        this.validPositionCache = new LinkedHashMap<>(16, 0.75f, true);
         this.pendingInvalidations = ConcurrentHashMap.newKeySet();
         this.sectionChangeFrequency = new ConcurrentHashMap<>();
-
-        this.scheduledExecutor = Executors.newScheduledThreadPool(1, r -> {
-            Thread t = new Thread(r, "SnowCache-Scheduler");
-            t.setDaemon(true);
-            return t;
-        });
-
-        // 启动批量失效任务
-        this.batchInvalidationTask = scheduledExecutor.scheduleAtFixedRate(
-                this::processBatchInvalidation,
-                CACHE_INVALIDATION_BATCH_DELAY,
-                CACHE_INVALIDATION_BATCH_DELAY,
-                TimeUnit.MILLISECONDS
-        );
     }
 
     /**
      * 获取分区的有效位置（带缓存）
      *
      * @param sectionPos           分区位置
-     * @param sectionBlocks        分区方块集合
-     * @param level                服务器世界
+     * @param floorIndex           房间地面索引
+     * @param weights              位置权重，未命中时用于构建抽样器
+     * @param level                世界快照
      * @param snowPlacementChecker 积雪放置检查器
-     * @return 有效位置集合
+     * @return 有效位置集合，只读，命中时直接返回缓存的实例
      */
-    public Set<BlockPos> getSectionValidPositions(SectionPos sectionPos,
-                                                  Set<BlockPos> sectionBlocks,
-                                                  ServerLevel level,
-                                                  SnowPlacementChecker snowPlacementChecker) {
-        // 检查缓存
-        CacheEntry cached = validPositionCache.get(sectionPos);
-        if (cached != null && !cached.isExpired()) {
-            cacheAccessOrder.offer(sectionPos); // 更新访问顺序
-            return new HashSet<>(cached.positions);
+    public SectionPositions getSectionValidPositions(SectionPos sectionPos,
+                                                     SnowFloorIndex floorIndex,
+                                                     SnowWeights weights,
+                                                     LevelSnapshot level,
+                                                     SnowPlacementChecker snowPlacementChecker) {
+        // 检查缓存，命中时LinkedHashMap自动更新访问顺序
+        synchronized (validPositionCache) {
+            CacheEntry cached = validPositionCache.get(sectionPos);
+            if (cached != null) {
+                if (!cached.isExpired()) {
+                    hitCount++;
+                    return cached.positions;
+                }
+                removeEntry(sectionPos);
+            }
+            missCount++;
         }
 
         // 计算有效位置
-        Set<BlockPos> validPositions = calculateValidPositions(sectionPos, sectionBlocks, level, snowPlacementChecker);
+        SectionPositions validPositions = calculateValidPositions(sectionPos, floorIndex, level, snowPlacementChecker)
+                .withWeights(weights);
 
         // 更新缓存
         updateCache(sectionPos, validPositions);
@@ -119,23 +121,52 @@ public class SnowCacheManager {
     /**
      * 获取缓存命中率
      *
-     * @return 命中率
+     * @return 命中率（百分比）
      */
     public long getCacheHitRate() {
-        if (validPositionCache.isEmpty()) {
-            return 0;
+        synchronized (validPositionCache) {
+            long total = hitCount + missCount;
+            return total > 0 ? hitCount * 100 / total : 0;
+        }
+    }
+
+    public long getHitCount() {
+        synchronized (validPositionCache) {
+            return hitCount;
+        }
+    }
+
+    public long getMissCount() {
+        synchronized (validPositionCache) {
+            return missCount;
+        }
+    }
+
+    public long getEvictionCount() {
+        synchronized (validPositionCache) {
+            return evictionCount;
+        }
+    }
+
+    /**
+     * 获取缓存条目的估算内存占用
+     *
+     * @return 估算字节数
+     */
+    public long getEstimatedBytes() {
+        synchronized (validPositionCache) {
+            return estimatedBytes;
         }
-        return validPositionCache.values().stream()
-                .mapToLong(e -> e.accessCount)
-                .sum() / validPositionCache.size();
     }
 
     /**
      * 清除所有缓存
      */
     public void clearAll() {
-        validPositionCache.clear();
-        cacheAccessOrder.clear();
+        synchronized (validPositionCache) {
+            validPositionCache.clear();
+            estimatedBytes = 0;
+        }
         pendingInvalidations.clear();
         sectionChangeFrequency.clear();
     }
@@ -144,76 +175,117 @@ public class SnowCacheManager {
      * 关闭缓存管理器
      */
     public void shutdown() {
-        if (batchInvalidationTask != null) {
-            batchInvalidationTask.cancel(false);
-        }
-
-        scheduledExecutor.shutdown();
-        try {
-            if (!scheduledExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                scheduledExecutor.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            scheduledExecutor.shutdownNow();
-            Thread.currentThread().interrupt();
-        }
+        clearAll();
     }
 
     /**
      * 计算有效位置
+     *
+     * <p>关闭空中积雪时只检查地面方块，否则检查分区内的所有房间方块。</p>
      */
-    private Set<BlockPos> calculateValidPositions(SectionPos sectionPos,
-                                                  Set<BlockPos> sectionBlocks,
-                                                  ServerLevel level,
-                                                  SnowPlacementChecker checker) {
-        if (sectionBlocks == null || sectionBlocks.isEmpty()) {
-            return Collections.emptySet();
+    private SectionPositions calculateValidPositions(SectionPos sectionPos,
+                                                     SnowFloorIndex floorIndex,
+                                                     LevelSnapshot level,
+                                                     SnowPlacementChecker checker) {
+        RoomShape room = floorIndex.getRoom();
+        int section = room.getSectionIndex(sectionPos.asLong());
+        if (section < 0) {
+            return SectionPositions.EMPTY;
         }
 
-        Set<BlockPos> validPositions = new HashSet<>();
-        ChunkPos chunkPos = new ChunkPos(sectionPos.x(), sectionPos.z());
+        // 检查分区是否在快照中（区块已加载）
+        if (level.getStates(sectionPos.x(), sectionPos.y(), sectionPos.z()) == null) {
+            return SectionPositions.EMPTY;
+        }
 
-        // 检查区块是否加载
-        if (!level.hasChunk(chunkPos.x, chunkPos.z)) {
-            return Collections.emptySet();
+        BlockPos.MutableBlockPos cursor = new BlockPos.MutableBlockPos();
+        if (SnowGenerationConfig.snowProbability <= 0) {
+            return calculateFloorPositions(sectionPos, floorIndex.getFloorCells(section), level, checker, cursor);
         }
 
-        LevelChunk chunk = level.getChunk(chunkPos.x, chunkPos.z);
+        // 分区内按下标升序遍历，结果无需排序
+        short[] buffer = new short[room.getSectionSize(section)];
+        int[] count = new int[1];
 
-        for (BlockPos pos : sectionBlocks) {
-            if (pos.getY() >= level.getMinBuildHeight() && pos.getY() <= level.getMaxBuildHeight()) {
-                BlockState state = chunk.getBlockState(pos);
-                if (checker.canPlaceSnow(pos, state, level)) {
-                    validPositions.add(pos);
+        room.forEachInSection(section, packed -> {
+            cursor.set(packed);
+            if (cursor.getY() >= level.getMinBuildHeight() && cursor.getY() <= level.getMaxBuildHeight()) {
+                BlockState state = level.getBlockState(cursor);
+                if (checker.canPlaceSnow(cursor, state, level)) {
+                    buffer[count[0]++] = SectionPositions.localIndex(cursor.getX(), cursor.getY(), cursor.getZ());
                 }
             }
-        }
+        });
 
-        return validPositions;
+        return SectionPositions.of(sectionPos, buffer, count[0]);
+    }
+
+    /**
+     * 只检查地面方块的有效位置，地面下标本身已按升序排列
+     */
+    private SectionPositions calculateFloorPositions(SectionPos sectionPos,
+                                                     short[] floorCells,
+                                                     LevelSnapshot level,
+                                                     SnowPlacementChecker checker,
+                                                     BlockPos.MutableBlockPos cursor) {
+        short[] buffer = new short[floorCells.length];
+        int count = 0;
+        int minY = level.getMinBuildHeight();
+        int maxY = level.getMaxBuildHeight();
+
+        for (short index : floorCells) {
+            cursor.set(sectionPos.minBlockX() + (index & 15),
+                    sectionPos.minBlockY() + (index >> 8 & 15),
+                    sectionPos.minBlockZ() + (index >> 4 & 15));
+            if (cursor.getY() >= minY && cursor.getY() <= maxY
+                    && checker.canPlaceSnow(cursor, level.getBlockState(cursor), level)) {
+                buffer[count++] = index;
+            }
+        }
+        return SectionPositions.of(sectionPos, buffer, count);
     }
 
     /**
      * 更新缓存
      */
-    private void updateCache(SectionPos sectionPos, Set<BlockPos> positions) {
-        // LRU缓存管理
-        if (validPositionCache.size() >= MAX_CACHE_SIZE) {
-            SectionPos oldest = cacheAccessOrder.poll();
-            if (oldest != null) {
-                validPositionCache.remove(oldest);
+    private void updateCache(SectionPos sectionPos, SectionPositions positions) {
+        CacheEntry entry = new CacheEntry(positions);
+        synchronized (validPositionCache) {
+            removeEntry(sectionPos);
+            validPositionCache.put(sectionPos, entry);
+            estimatedBytes += entry.estimatedBytes;
+
+            // 从最久未访问的条目开始淘汰，保留刚放入的条目
+            Iterator<Map.Entry<SectionPos, CacheEntry>> iterator = validPositionCache.entrySet().iterator();
+            while (estimatedBytes > MAX_CACHE_BYTES && validPositionCache.size() > 1) {
+                CacheEntry eldest = iterator.next().getValue();
+                iterator.remove();
+                estimatedBytes -= eldest.estimatedBytes;
+                evictionCount++;
             }
         }
+    }
 
-        validPositionCache.put(sectionPos, new CacheEntry(positions));
-        cacheAccessOrder.offer(sectionPos);
+    /**
+     * 移除条目并扣除估算占用，调用方需持有缓存锁
+     */
+    private boolean removeEntry(SectionPos sectionPos) {
+        CacheEntry removed = validPositionCache.remove(sectionPos);
+        if (removed != null) {
+            estimatedBytes -= removed.estimatedBytes;
+            return true;
+        }
+        return false;
     }
 
     /**
      * 立即失效缓存
      */
     private void immediateInvalidation(SectionPos sectionPos, String reason) {
-        boolean removed = validPositionCache.remove(sectionPos) != null;
-        cacheAccessOrder.removeIf(pos -> pos.equals(sectionPos));
+        boolean removed;
+        synchronized (validPositionCache) {
+            removed = removeEntry(sectionPos);
+        }
 
         if (removed) {
             ModernFurniture.LOGGER.debug("立即失效缓存: {} 原因: {}", sectionPos, reason);
@@ -221,9 +293,9 @@ public class SnowCacheManager {
     }
 
     /**
-     * 批量处理缓存失效
+     * 批量处理缓存失效，由{@link SnowService}的调度线程定期调用
      */
-    private void processBatchInvalidation() {
+    void processBatchInvalidation() {
         if (pendingInvalidations.isEmpty()) {
             return;
         }
@@ -241,9 +313,11 @@ public class SnowCacheManager {
 
         // 执行批量失效
         for (SectionPos sectionPos : toInvalidate) {
-            boolean removed = validPositionCache.remove(sectionPos) != null;
+            boolean removed;
+            synchronized (validPositionCache) {
+                removed = removeEntry(sectionPos);
+            }
             if (removed) {
-                cacheAccessOrder.removeIf(pos -> pos.equals(sectionPos));
                 ModernFurniture.LOGGER.debug("批量失效缓存: {}", sectionPos);
             }
         }
@@ -257,14 +331,14 @@ public class SnowCacheManager {
      * 缓存条目
      */
     private static class CacheEntry {
-        final Set<BlockPos> positions;
+        final SectionPositions positions;
         final long timestamp;
-        final long accessCount;
+        final long estimatedBytes;
 
-        CacheEntry(Set<BlockPos> positions) {
-            this.positions = new HashSet<>(positions);
+        CacheEntry(SectionPositions positions) {
+            this.positions = positions;
             this.timestamp = System.currentTimeMillis();
-            this.accessCount = 1;
+            this.estimatedBytes = ENTRY_OVERHEAD_BYTES + positions.estimatedBytes();
         }
 
         boolean isExpired() {
@@ -0,0 +1,152 @@
+package com.flechazo.modernfurniture.util.snow;
+
+import com.flechazo.modernfurniture.util.room.PassabilityTable;
+import com.flechazo.modernfurniture.util.room.RoomShape;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.Predicate;
+
+/**
+ * 积雪覆盖率计数器
+ *
+ * <p>增量维护房间内的有效地面数量与已积雪数量，覆盖率查询不再遍历房间。</p>
+ *
+ * <h2>有效位置</h2>
+ * <ul>
+ *   <li>下方为实心地面的空气</li>
+ *   <li>房间内的积雪方块，同时计入已积雪数量</li>
+ * </ul>
+ *
+ * <h2>更新方式</h2>
+ * <ul>
+ *   <li>房间形状变化时按地面方块重建一次</li>
+ *   <li>积雪写入和方块事件只标记变化位置，查询时重新分类该位置及其上方位置</li>
+ * </ul>
+ *
+ * <p>覆盖层模式下积雪不在世界中，已积雪由{@link #setOverlaySnow}提供的记录判断。</p>
+ *
+ * <p>变化位置延迟到下一次查询时才读取，同一位置的多次变化只分类一次。
+ * 只能在服务器线程上访问。</p>
+ */
+public class SnowCoverageTracker {
+    private final ServerLevel level;
+    private final LongOpenHashSet validCells = new LongOpenHashSet();
+    private final LongOpenHashSet coveredCells = new LongOpenHashSet();
+    private final LongOpenHashSet dirtyCells = new LongOpenHashSet();
+    private final BlockPos.MutableBlockPos cursor = new BlockPos.MutableBlockPos();
+    private RoomShape room;
+    @Nullable
+    private Predicate<BlockPos> overlaySnow;
+
+    /**
+     * 构造覆盖率计数器
+     *
+     * @param level 服务器世界
+     * @param room  房间形状
+     */
+    public SnowCoverageTracker(ServerLevel level, RoomShape room) {
+        this.level = level;
+        updateRoom(room, SnowedCells.EMPTY);
+    }
+
+    /**
+     * 替换房间形状并重建计数，成本与地面方块数量成正比
+     *
+     * @param room        新的房间形状
+     * @param snowedCells 已放置积雪的位置，用于补充非地面的积雪
+     */
+    public void updateRoom(RoomShape room, SnowedCells snowedCells) {
+        this.room = room;
+        validCells.clear();
+        coveredCells.clear();
+        dirtyCells.clear();
+
+        room.forEachFloor((x, y, z) -> classify(cursor.set(x, y, z)));
+        snowedCells.forEach(pos -> {
+            dirtyCells.add(pos);
+            dirtyCells.add(BlockPos.offset(pos, 0, 1, 0));
+        });
+    }
+
+    /**
+     * 设置覆盖层模式下的积雪记录
+     *
+     * @param overlaySnow 位置是否有覆盖层积雪
+     */
+    public void setOverlaySnow(Predicate<BlockPos> overlaySnow) {
+        this.overlaySnow = overlaySnow;
+    }
+
+    /**
+     * 标记方块变化，下方方块的变化同样会影响上方位置
+     *
+     * @param pos 变化位置
+     */
+    public void markChanged(BlockPos pos) {
+        long packed = pos.asLong();
+        dirtyCells.add(packed);
+        dirtyCells.add(BlockPos.offset(packed, 0, 1, 0));
+    }
+
+    /**
+     * 获取当前覆盖率
+     *
+     * @return 已积雪的有效位置占全部有效位置的比例
+     */
+    public double getCoverage() {
+        flush();
+        return validCells.isEmpty() ? 0.0 : (double) coveredCells.size() / validCells.size();
+    }
+
+    public int getValidCount() {
+        flush();
+        return validCells.size();
+    }
+
+    public int getCoveredCount() {
+        flush();
+        return coveredCells.size();
+    }
+
+    /**
+     * 重新分类所有标记过的位置
+     */
+    private void flush() {
+        if (dirtyCells.isEmpty()) {
+            return;
+        }
+
+        LongIterator iterator = dirtyCells.iterator();
+        while (iterator.hasNext()) {
+            classify(cursor.set(iterator.nextLong()));
+        }
+        dirtyCells.clear();
+    }
+
+    private void classify(BlockPos pos) {
+        long packed = pos.asLong();
+        validCells.remove(packed);
+        coveredCells.remove(packed);
+
+        if (!room.contains(pos) || !level.isLoaded(pos)) {
+            return;
+        }
+
+        BlockState state = level.getBlockState(pos);
+        if (state.getBlock() == Blocks.SNOW) {
+            validCells.add(packed);
+            coveredCells.add(packed);
+        } else if (state.isAir() && PassabilityTable.isSolidFloor(level.getBlockState(pos.below()))) {
+            validCells.add(packed);
+            if (overlaySnow != null && overlaySnow.test(pos)) {
+                coveredCells.add(packed);
+            }
+        }
+    }
+}
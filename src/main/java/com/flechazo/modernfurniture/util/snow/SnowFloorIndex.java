@@ -0,0 +1,109 @@
+package com.flechazo.modernfurniture.util.snow;
+
+import com.flechazo.modernfurniture.util.room.RoomShape;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+
+import java.util.Arrays;
+
+/**
+ * 房间地面索引
+ *
+ * <p>按房间分区记录地面方块（下方方块不属于房间的位置），即每一列中积雪能落到的高度。
+ * 同一列有多层地面时（例如桌面与桌下的地板）每层都会记录。</p>
+ *
+ * <h2>用途</h2>
+ * <p>关闭空中积雪时，有效位置只可能出现在地面方块上，
+ * 候选位置的检查从遍历整个分区的体积降为只检查地面列。</p>
+ *
+ * <h2>抬高的地面</h2>
+ * <p>下方方块属于房间、但已成为实心地面的位置（例如满8层积雪的上方）也是地面，
+ * 通过{@link #withFloor}逐个加入或移除，由方块变化驱动。</p>
+ *
+ * <p>索引由房间形状计算，房间形状变化后重新创建。实例不可变，可以在线程之间安全共享。</p>
+ */
+public final class SnowFloorIndex {
+    private final RoomShape room;
+    private final short[][] floorCells;
+    private final int floorCount;
+
+    private SnowFloorIndex(RoomShape room, short[][] floorCells, int floorCount) {
+        this.room = room;
+        this.floorCells = floorCells;
+        this.floorCount = floorCount;
+    }
+
+    /**
+     * 从房间形状创建地面索引，成本与分区数量成正比
+     *
+     * @param room 房间形状
+     * @return 地面索引
+     */
+    public static SnowFloorIndex of(RoomShape room) {
+        short[][] floorCells = new short[room.getSectionCount()][];
+        short[] buffer = new short[4096];
+        int total = 0;
+
+        for (int section = 0; section < floorCells.length; section++) {
+            int[] count = new int[1];
+            room.forEachFloorInSection(section, index -> buffer[count[0]++] = (short) index);
+            floorCells[section] = Arrays.copyOf(buffer, count[0]);
+            total += count[0];
+        }
+        return new SnowFloorIndex(room, floorCells, total);
+    }
+
+    /**
+     * 加入或移除一个地面方块，只复制该位置所在分区的数组
+     *
+     * @param pos   房间内的位置
+     * @param floor 是否为地面
+     * @return 新索引，没有变化时返回自身
+     */
+    public SnowFloorIndex withFloor(BlockPos pos, boolean floor) {
+        int section = room.getSectionIndex(SectionPos.asLong(pos));
+        if (section < 0 || !room.contains(pos)) {
+            return this;
+        }
+
+        short index = SectionPositions.localIndex(pos.getX(), pos.getY(), pos.getZ());
+        short[] cells = floorCells[section];
+        int found = Arrays.binarySearch(cells, index);
+        if (found >= 0 == floor) {
+            return this;
+        }
+
+        short[] updated = new short[cells.length + (floor ? 1 : -1)];
+        if (floor) {
+            int insert = -found - 1;
+            System.arraycopy(cells, 0, updated, 0, insert);
+            updated[insert] = index;
+            System.arraycopy(cells, insert, updated, insert + 1, cells.length - insert);
+        } else {
+            System.arraycopy(cells, 0, updated, 0, found);
+            System.arraycopy(cells, found + 1, updated, found, cells.length - found - 1);
+        }
+
+        short[][] sections = floorCells.clone();
+        sections[section] = updated;
+        return new SnowFloorIndex(room, sections, floorCount + (floor ? 1 : -1));
+    }
+
+    public RoomShape getRoom() {
+        return room;
+    }
+
+    /**
+     * 获取分区内的地面方块
+     *
+     * @param section 房间分区下标
+     * @return 升序的分区内下标，调用方不得修改
+     */
+    public short[] getFloorCells(int section) {
+        return floorCells[section];
+    }
+
+    public int getFloorCount() {
+        return floorCount;
+    }
+}
@@ -0,0 +1,30 @@
+package com.flechazo.modernfurniture.util.snow;
+
+import net.minecraft.core.BlockPos;
+
+/**
+ * 分页读取的积雪位置与层数
+ *
+ * @param cursor     本页的起始游标
+ * @param nextCursor 下一页的游标，没有下一页时为-1
+ * @param total      读取时的积雪位置总数
+ * @param positions  BlockPos.asLong打包坐标
+ * @param layers     对应位置的层数
+ */
+public record SnowLayerPage(int cursor, int nextCursor, int total, long[] positions, byte[] layers) {
+    public int size() {
+        return positions.length;
+    }
+
+    public BlockPos getPos(int i) {
+        return BlockPos.of(positions[i]);
+    }
+
+    public int getLayers(int i) {
+        return layers[i];
+    }
+
+    public boolean hasNext() {
+        return nextCursor >= 0;
+    }
+}
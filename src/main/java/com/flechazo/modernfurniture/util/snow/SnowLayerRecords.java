@@ -0,0 +1,123 @@
+package com.flechazo.modernfurniture.util.snow;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+import java.util.Arrays;
+
+/**
+ * 积雪位置与层数记录
+ *
+ * <p>坐标与层数按下标连续存放在基本类型数组中，哈希表只记录坐标对应的下标，不为每个位置创建对象。
+ * 删除时用末尾元素填补空位，数组始终保持紧凑。</p>
+ *
+ * <h2>游标分页</h2>
+ * <p>{@link #page}的游标就是数组下标，每页成本只与页大小成正比。
+ * 两次调用之间删除的位置会被末尾元素填补，分页可能重复或遗漏位置。</p>
+ *
+ * <p>只在服务器线程上使用。</p>
+ */
+final class SnowLayerRecords {
+    private final Long2IntOpenHashMap slots = new Long2IntOpenHashMap();
+    private long[] positions = new long[64];
+    private byte[] layers = new byte[64];
+    private int size = 0;
+
+    SnowLayerRecords() {
+        slots.defaultReturnValue(-1);
+    }
+
+    /**
+     * 获取位置的层数
+     *
+     * @param pos BlockPos.asLong打包坐标
+     * @return 层数，没有记录时返回0
+     */
+    int get(long pos) {
+        int slot = slots.get(pos);
+        return slot < 0 ? 0 : layers[slot];
+    }
+
+    boolean contains(long pos) {
+        return slots.containsKey(pos);
+    }
+
+    /**
+     * 记录位置的层数
+     *
+     * @return 原来的层数，没有记录时返回0
+     */
+    int put(long pos, int layers) {
+        int slot = slots.get(pos);
+        if (slot >= 0) {
+            int previous = this.layers[slot];
+            this.layers[slot] = (byte) layers;
+            return previous;
+        }
+
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size * 2);
+            this.layers = Arrays.copyOf(this.layers, size * 2);
+        }
+        positions[size] = pos;
+        this.layers[size] = (byte) layers;
+        slots.put(pos, size++);
+        return 0;
+    }
+
+    /**
+     * 移除位置的记录
+     *
+     * @return 原来的层数，没有记录时返回0
+     */
+    int remove(long pos) {
+        int slot = slots.remove(pos);
+        if (slot < 0) {
+            return 0;
+        }
+
+        int previous = layers[slot];
+        int last = --size;
+        if (slot != last) {
+            positions[slot] = positions[last];
+            layers[slot] = layers[last];
+            slots.put(positions[slot], slot);
+        }
+        return previous;
+    }
+
+    void clear() {
+        slots.clear();
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 复制当前记录的坐标，用于在遍历期间修改记录
+     */
+    long[] positions() {
+        return Arrays.copyOf(positions, size);
+    }
+
+    void forEach(SnowOperationExecutor.SnowCellConsumer consumer) {
+        for (int i = 0; i < size; i++) {
+            consumer.accept(positions[i], layers[i]);
+        }
+    }
+
+    /**
+     * 从游标处读取一页
+     *
+     * @param cursor   起始下标，第一页为0
+     * @param pageSize 每页位置数量
+     * @return 该页的积雪
+     */
+    SnowLayerPage page(int cursor, int pageSize) {
+        int from = Math.max(0, Math.min(cursor, size));
+        int to = (int) Math.min(size, (long) from + Math.max(1, pageSize));
+        return new SnowLayerPage(from, to < size ? to : -1, size,
+                Arrays.copyOfRange(positions, from, to), Arrays.copyOfRange(layers, from, to));
+    }
+}
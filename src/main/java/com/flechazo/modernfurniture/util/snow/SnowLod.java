@@ -0,0 +1,54 @@
+package com.flechazo.modernfurniture.util.snow;
+
+import com.flechazo.modernfurniture.config.module.SnowGenerationConfig;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+
+/**
+ * 积雪模拟的细节层级
+ *
+ * <p>按最近玩家到房间包围盒的距离决定房间的模拟方式：</p>
+ * <ul>
+ *   <li><b>FULL：</b>{@link SnowGenerationConfig#snowFullDistance}以内，完整执行每个积雪周期</li>
+ *   <li><b>VIRTUAL：</b>{@link SnowGenerationConfig#snowVirtualDistance}以内，只累计周期数，
+ *   玩家靠近时按期望覆盖率一次性补齐</li>
+ *   <li><b>FROZEN：</b>更远或世界内没有玩家，积雪完全停止</li>
+ * </ul>
+ */
+public enum SnowLod {
+    FULL,
+    VIRTUAL,
+    FROZEN;
+
+    /**
+     * 计算房间当前的细节层级
+     *
+     * @param level  服务器世界
+     * @param bounds 房间包围盒
+     * @return 细节层级
+     */
+    public static SnowLod of(ServerLevel level, BoundingBox bounds) {
+        double nearest = Double.MAX_VALUE;
+        for (ServerPlayer player : level.players()) {
+            nearest = Math.min(nearest, distanceSqr(bounds, player.getX(), player.getY(), player.getZ()));
+        }
+
+        double full = SnowGenerationConfig.snowFullDistance;
+        if (nearest <= full * full) {
+            return FULL;
+        }
+        double virtual = SnowGenerationConfig.snowVirtualDistance;
+        return nearest <= virtual * virtual ? VIRTUAL : FROZEN;
+    }
+
+    /**
+     * 点到包围盒的距离平方，点在盒内时为0
+     */
+    static double distanceSqr(BoundingBox bounds, double x, double y, double z) {
+        double dx = Math.max(0, Math.max(bounds.minX() - x, x - (bounds.maxX() + 1)));
+        double dy = Math.max(0, Math.max(bounds.minY() - y, y - (bounds.maxY() + 1)));
+        double dz = Math.max(0, Math.max(bounds.minZ() - z, z - (bounds.maxZ() + 1)));
+        return dx * dx + dy * dy + dz * dz;
+    }
+}
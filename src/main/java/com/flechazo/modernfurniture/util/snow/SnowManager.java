@@ -2,16 +2,22 @@ package com.flechazo.modernfurniture.util.snow;
 
 import com.flechazo.modernfurniture.ModernFurniture;
 import com.flechazo.modernfurniture.config.module.SnowGenerationConfig;
-import com.flechazo.modernfurniture.event.handler.SnowEventHandler;
+import com.flechazo.modernfurniture.util.room.LevelSnapshot;
+import com.flechazo.modernfurniture.util.room.PassabilityTable;
+import com.flechazo.modernfurniture.util.room.RoomShape;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
 import net.minecraft.server.level.ServerLevel;
-import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.state.BlockState;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -32,55 +38,153 @@ import java.util.concurrent.atomic.AtomicReference;
  * @see SnowSectionManager 分区管理
  * @see SnowCacheManager 缓存管理
  * @see SnowPerformanceMonitor 性能监控
+ * @see SnowService 共享线程
+ * @see SnowBudget 全服写入预算
+ * @see SnowSavedData 积雪存档
+ * @see SnowLod 细节层级
  */
 public class SnowManager {
+    private static final long LOD_CHECK_INTERVAL = 20;
+
     private final ServerLevel level;
-    private final Set<BlockPos> roomBlocks;
+    private final SnowService service;
+    private final SnowRoomIndex roomIndex;
+    // 覆盖层积雪不是真实方块，不写入世界存档，此时为null
+    @Nullable
+    private final SnowSavedData savedData;
+
+    // 房间形状与每次降雪计算前需要复制的分区（房间分区及其下方分区）
+    private volatile RoomShape room;
+    private volatile LongSet snapshotSections;
 
     // 子系统组件
     private final SnowSectionManager sectionManager;
     private final SnowCacheManager cacheManager;
     private final SnowOperationExecutor operationExecutor;
     private final SnowPerformanceMonitor performanceMonitor;
-    private final SnowEventHandler eventHandler;
+    private final SnowCoverageTracker coverageTracker;
     private final SnowAlgorithm algorithm;
+    // 覆盖层模式下积雪只同步给客户端绘制，否则为null
+    @Nullable
+    private final SnowOverlaySync overlay;
 
     // 异步操作管理
     private final AtomicReference<CompletableFuture<List<SnowOperation>>> pendingOperations;
+    // 计算完成、等待写入预算的操作
+    private final ArrayDeque<SnowOperation> readyOperations = new ArrayDeque<>();
+    private long writeNanos = 0;
+
+    // 全服写入预算的调度状态，由SnowBudget维护
+    boolean budgetScheduled = false;
+    int budgetDeficit = 0;
 
     // 状态跟踪
     private long lastSnowTime = 0;
     private int snowCycles = 0;
+    private int coolingUnits = 1;
+    private volatile SnowWeights weights = SnowWeights.UNIFORM;
+
+    // 细节层级，玩家远离时累计的虚拟周期在靠近后一次性补齐
+    private SnowLod lod = SnowLod.FULL;
+    private long lastLodCheck = Long.MIN_VALUE;
+    private int virtualCycles = 0;
 
     /**
      * 构造积雪管理器
      *
-     * @param level      服务器世界
-     * @param roomBlocks 房间方块位置集合
+     * @param level 服务器世界
+     * @param room  房间形状
      */
-    public SnowManager(ServerLevel level, Set<BlockPos> roomBlocks) {
+    public SnowManager(ServerLevel level, RoomShape room) {
         this.level = level;
-        this.roomBlocks = new HashSet<>(roomBlocks);
+        this.room = room;
         this.pendingOperations = new AtomicReference<>();
         long randomSeed = level.getRandom().nextLong();
 
         // 初始化子系统
-        this.sectionManager = new SnowSectionManager(roomBlocks);
+        this.sectionManager = new SnowSectionManager(room);
         this.cacheManager = new SnowCacheManager();
-        this.operationExecutor = new SnowOperationExecutor(level);
+        this.coverageTracker = new SnowCoverageTracker(level, room);
+        this.overlay = SnowGenerationConfig.snowOverlayMode ? new SnowOverlaySync(level) : null;
+        this.operationExecutor = new SnowOperationExecutor(level, coverageTracker, overlay);
+        if (overlay != null) {
+            coverageTracker.setOverlaySnow(operationExecutor::hasSnow);
+        }
+        operationExecutor.setFullSnowListener(pos -> updateFloor(pos.above(), true, "snow_full"));
         this.performanceMonitor = new SnowPerformanceMonitor();
-        this.algorithm = new SnowAlgorithm(randomSeed, roomBlocks.size());
-        this.eventHandler = new SnowEventHandler(level, roomBlocks, cacheManager);
+        this.algorithm = new SnowAlgorithm(randomSeed, room.size());
+        this.snapshotSections = collectSnapshotSections(room);
+
+        this.service = SnowService.get(level);
+        service.register(this);
+        this.roomIndex = SnowRoomIndex.get(level);
+        roomIndex.add(this, room);
+
+        // 领回存档中位于房间内的积雪
+        this.savedData = overlay == null ? SnowSavedData.get(level) : null;
+        if (savedData != null) {
+            savedData.attach(this, room);
+        }
+    }
+
+    /**
+     * 房间增量变化后更新房间形状，已有积雪保留
+     *
+     * <p>重建分区索引与覆盖率计数并清理缓存，成本与分区及地面方块数量成正比。</p>
+     *
+     * @param room 新的房间形状
+     */
+    public void updateRoom(RoomShape room) {
+        roomIndex.update(this, this.room, room);
+        this.room = room;
+        this.snapshotSections = collectSnapshotSections(room);
+        sectionManager.updateRoom(room);
+        // 新索引只包含房间形状决定的地面，补回已满层积雪上方的位置
+        if (overlay == null) {
+            operationExecutor.forEachSnow((pos, layers) -> {
+                if (layers == SnowOperation.MAX_LAYERS) {
+                    sectionManager.updateFloor(BlockPos.of(pos).above(), true);
+                }
+            });
+        }
+        if (savedData != null) {
+            savedData.adopt(this, room);
+        }
+        coverageTracker.updateRoom(room, operationExecutor.getSnowedCells());
+        cacheManager.clearAll();
     }
 
     /**
      * 执行异步降雪处理
      *
+     * <p>按{@link SnowLod}决定模拟方式：附近有玩家时完整执行，较远时只累计虚拟周期，
+     * 更远或世界内没有玩家时暂停。</p>
+     *
      * @param currentTime 当前时间
      * @return 是否成功执行降雪操作
      */
     public boolean performSnowingAsync(long currentTime) {
-        if (!shouldPerformSnowing(currentTime)) {
+        if (overlay != null) {
+            overlay.tick(currentTime, room.getBounds());
+        }
+        updateLod(currentTime);
+        if (lod == SnowLod.FROZEN) {
+            return false;
+        }
+
+        if (lod == SnowLod.VIRTUAL) {
+            // 已经开始的计算照常写入，之后的周期只计数
+            processPendingOperations();
+            if (shouldPerformSnowing(currentTime)) {
+                lastSnowTime = currentTime;
+                snowCycles++;
+                virtualCycles++;
+            }
+            return false;
+        }
+
+        // 上一批操作仍在等待写入预算
+        if (!readyOperations.isEmpty()) {
             return false;
         }
 
@@ -89,6 +193,21 @@ public class SnowManager {
             return true;
         }
 
+        // 计算仍在进行，超时由orTimeout处理
+        if (pendingOperations.get() != null) {
+            return false;
+        }
+
+        // 玩家靠近后先补齐远离期间的周期，这些周期计数时已经检查过周期限制与间隔
+        if (virtualCycles > 0 && canCatchUp()) {
+            startCatchUpCalculation(currentTime);
+            return false;
+        }
+
+        if (!shouldPerformSnowing(currentTime)) {
+            return false;
+        }
+
         // 启动新的降雪计算
         startNewSnowCalculation(currentTime);
         return false;
@@ -100,9 +219,22 @@ public class SnowManager {
     public void clearAllSnow() {
         // 取消待处理操作
         cancelPendingOperations();
+        SnowBudget.remove(this);
+        readyOperations.clear();
+        writeNanos = 0;
+
+        // 分区写入不经过方块变化事件，满层积雪上方的位置在这里移出地面索引
+        if (overlay == null) {
+            operationExecutor.forEachSnow((pos, layers) -> {
+                if (layers == SnowOperation.MAX_LAYERS) {
+                    updateFloor(BlockPos.of(pos).above(), false, "snow_clear");
+                }
+            });
+        }
 
         // 清除积雪方块
         operationExecutor.clearAllSnow();
+        markSavedDataDirty();
 
         // 重置状态
         resetState();
@@ -112,7 +244,7 @@ public class SnowManager {
     }
 
     /**
-     * 获取积雪统计信息
+     * 获取积雪统计信息，只读取计数器与层数分布
      *
      * @return 积雪统计数据
      */
@@ -120,25 +252,184 @@ public class SnowManager {
         return new SnowStats(
                 operationExecutor.getSnowedPositionsCount(),
                 snowCycles,
-                operationExecutor.getSnowLayers(),
+                operationExecutor.getLayerHistogram(),
                 performanceMonitor.getAverageProcessTime(),
-                performanceMonitor.getCurrentDensity(roomBlocks.size()),
+                performanceMonitor.getCurrentDensity(room.size()),
                 sectionManager.getActiveSectionsCount(),
                 cacheManager.getCacheHitRate(),
                 performanceMonitor.getMemoryUsage(),
-                calculateCurrentCoverage(),
+                coverageTracker.getCoverage(),
                 hasReachedCycleLimit(),
                 hasReachedCoverageLimit()
         );
     }
 
     /**
-     * 关闭管理器，释放资源
+     * 从游标处分页读取积雪位置与层数，供确实需要逐个位置数据的调用方使用
+     *
+     * @param cursor   起始游标，第一页为0，之后使用{@link SnowLayerPage#nextCursor()}
+     * @param pageSize 每页位置数量
+     * @return 该页的积雪
+     */
+    public SnowLayerPage getSnowLayerPage(int cursor, int pageSize) {
+        return operationExecutor.getSnowLayerPage(cursor, pageSize);
+    }
+
+    /**
+     * 设置房间内正在制冷的空调数量，积雪周期间隔按数量缩短
+     *
+     * @param coolingUnits 空调数量
+     */
+    public void setCoolingUnits(int coolingUnits) {
+        this.coolingUnits = Math.max(1, coolingUnits);
+    }
+
+    /**
+     * 设置房间内空调的位置，靠近空调的位置积雪更多
+     *
+     * <p>缓存的抽样器包含旧权重，因此同时清空缓存。</p>
+     *
+     * @param sources 空调方块坐标
+     */
+    public void setCoolingSources(Collection<BlockPos> sources) {
+        this.weights = SnowWeights.of(sources);
+        cacheManager.clearAll();
+    }
+
+    /**
+     * 关闭管理器并释放资源，积雪交给融化队列逐层融化
+     *
+     * <p>房间在融化完成前重新开始制冷时，新的管理器会领回尚未融化的积雪。
+     * 覆盖层模式下积雪记录直接丢弃，只通知客户端移除。</p>
      */
     public void shutdown() {
-        clearAllSnow();
+        service.unregister(this);
+        roomIndex.remove(this, room);
+        cancelPendingOperations();
+        SnowBudget.remove(this);
+        readyOperations.clear();
+        if (savedData != null) {
+            savedData.melt(this);
+        }
+        clearOverlay();
+        cacheManager.shutdown();
+    }
+
+    /**
+     * 释放资源但保留积雪方块，积雪记录转入世界存档
+     *
+     * <p>空调所在区块卸载或世界卸载时调用，房间再次形成后由新的管理器领回。
+     * 覆盖层模式下积雪记录直接丢弃，不会进入暂存或融化队列。</p>
+     */
+    public void release() {
+        service.unregister(this);
+        roomIndex.remove(this, room);
+        cancelPendingOperations();
+        SnowBudget.remove(this);
+        readyOperations.clear();
+        if (savedData != null) {
+            savedData.park(this);
+        }
+        clearOverlay();
         cacheManager.shutdown();
-        performanceMonitor.shutdown();
+    }
+
+    public int getSnowCycles() {
+        return snowCycles;
+    }
+
+    /**
+     * 恢复存档中记录的积雪周期数
+     *
+     * @param snowCycles 积雪周期数
+     */
+    public void restoreSnowCycles(int snowCycles) {
+        this.snowCycles = Math.max(this.snowCycles, snowCycles);
+    }
+
+    /**
+     * 写入已计算完成的积雪操作，由{@link SnowBudget}在预算内调用
+     *
+     * @param maxWrites 本次最多写入的操作数量
+     * @return 实际处理的操作数量
+     */
+    int executeReadyOperations(int maxWrites) {
+        long startTime = System.nanoTime();
+        int count = Math.min(maxWrites, readyOperations.size());
+        List<SnowOperation> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            batch.add(readyOperations.pollFirst());
+        }
+        operationExecutor.executeOperations(batch);
+        markSavedDataDirty();
+        writeNanos += System.nanoTime() - startTime;
+
+        if (readyOperations.isEmpty()) {
+            // 整批写完后再更新性能统计与算法参数
+            performanceMonitor.recordOperation(writeNanos / 1_000_000L);
+            writeNanos = 0;
+            algorithm.updateParameters(
+                    performanceMonitor.getCurrentDensity(room.size()),
+                    performanceMonitor.getAverageProcessTime()
+            );
+        }
+        return count;
+    }
+
+    boolean hasReadyOperations() {
+        return !readyOperations.isEmpty();
+    }
+
+    int getCoolingUnits() {
+        return coolingUnits;
+    }
+
+    /**
+     * 房间附近的方块发生变化，由{@link SnowRoomIndex}分发
+     *
+     * @param pos    变化位置
+     * @param reason 变化原因
+     */
+    void onBlockChanged(BlockPos pos, String reason) {
+        cacheManager.scheduleInvalidation(pos, reason);
+        coverageTracker.markChanged(pos);
+        BlockState state = level.getBlockState(pos);
+        // 玩家破坏或替换的积雪不再保留记录
+        operationExecutor.onBlockChanged(pos, state);
+        // 变化后的方块成为或不再是实心地面时，上方位置随之加入或移出地面索引
+        updateFloor(pos.above(), PassabilityTable.isSolidFloor(state), reason);
+    }
+
+    private void updateFloor(BlockPos pos, boolean floor, String reason) {
+        if (sectionManager.updateFloor(pos, floor)) {
+            cacheManager.scheduleInvalidation(pos, reason);
+        }
+    }
+
+    public RoomShape getRoom() {
+        return room;
+    }
+
+    /**
+     * 遍历已放置的积雪，由{@link SnowSavedData}在保存时调用
+     */
+    void forEachSnow(SnowOperationExecutor.SnowCellConsumer consumer) {
+        operationExecutor.forEachSnow(consumer);
+    }
+
+    /**
+     * 恢复存档中记录的积雪，由{@link SnowSavedData}在领回时调用
+     */
+    void restoreSnow(long pos, int layers) {
+        operationExecutor.restore(pos, layers);
+    }
+
+    /**
+     * 执行定期维护，由{@link SnowService}的调度线程调用
+     */
+    void performMaintenance() {
+        cacheManager.processBatchInvalidation();
+        performanceMonitor.performMaintenance();
     }
 
     /**
@@ -153,7 +444,7 @@ public class SnowManager {
             return false;
         }
 
-        long snowDelayTicks = SnowGenerationConfig.snowDelayTicks;
+        long snowDelayTicks = Math.max(1, SnowGenerationConfig.snowDelayTicks / coolingUnits);
         if (currentTime - lastSnowTime < snowDelayTicks) {
             return false;
         }
@@ -161,8 +452,17 @@ public class SnowManager {
         return !performanceMonitor.shouldSkipDueToMemory();
     }
 
+    /**
+     * 检查是否可以补齐虚拟周期，只检查开关与内存压力
+     */
+    private boolean canCatchUp() {
+        return SnowGenerationConfig.enableSnow && !performanceMonitor.shouldSkipDueToMemory();
+    }
+
     /**
      * 处理待完成的异步操作
+     *
+     * <p>计算超时由{@link CompletableFuture#orTimeout}处理，超时后以空操作列表完成。</p>
      */
     private boolean processPendingOperations() {
         CompletableFuture<List<SnowOperation>> current = pendingOperations.get();
@@ -173,28 +473,18 @@ public class SnowManager {
         if (current.isDone()) {
             try {
                 List<SnowOperation> operations = current.get();
-                long startTime = System.currentTimeMillis();
-
-                operationExecutor.executeOperations(operations);
-
-                long processTime = System.currentTimeMillis() - startTime;
-                performanceMonitor.recordOperation(processTime);
-                algorithm.updateParameters(
-                        performanceMonitor.getCurrentDensity(roomBlocks.size()),
-                        performanceMonitor.getAverageProcessTime()
-                );
-
                 pendingOperations.set(null);
+
+                // 写入交给全服预算分摊
+                readyOperations.addAll(operations);
+                if (!readyOperations.isEmpty()) {
+                    SnowBudget.schedule(this);
+                }
                 return true;
             } catch (Exception e) {
                 ModernFurniture.LOGGER.warn("异步降雪计算失败", e);
                 pendingOperations.set(null);
             }
-        } else if (System.currentTimeMillis() - lastSnowTime > 5000) {
-            // 超时取消
-            current.cancel(true);
-            pendingOperations.set(null);
-            ModernFurniture.LOGGER.warn("异步降雪任务超时，已取消");
         }
 
         return false;
@@ -207,8 +497,14 @@ public class SnowManager {
         lastSnowTime = currentTime;
         snowCycles++;
 
+        // 工作线程只读取在服务器线程上复制的快照
+        LevelSnapshot snapshot = LevelSnapshot.capture(level, snapshotSections);
+        SnowedCells snowedCells = operationExecutor.getSnowedCells();
+
         CompletableFuture<List<SnowOperation>> future = CompletableFuture
-                .supplyAsync(this::calculateSnowOperations, algorithm.getExecutor())
+                .supplyAsync(() -> calculateSnowOperations(snapshot, snowedCells), service.getExecutor())
+                // 在工作线程上按位置合并，每个位置只写入一次
+                .thenApply(SnowOperation::coalesce)
                 .orTimeout(5000, java.util.concurrent.TimeUnit.MILLISECONDS)
                 .exceptionally(throwable -> {
                     ModernFurniture.LOGGER.warn("异步降雪计算异常", throwable);
@@ -218,18 +514,68 @@ public class SnowManager {
         pendingOperations.set(future);
     }
 
+    /**
+     * 启动虚拟周期的补齐计算，操作与普通周期一样交给全服预算写入
+     */
+    private void startCatchUpCalculation(long currentTime) {
+        int cycles = virtualCycles;
+        virtualCycles = 0;
+        lastSnowTime = currentTime;
+        ModernFurniture.LOGGER.debug("[积雪细节] 补齐{}个虚拟周期", cycles);
+
+        LevelSnapshot snapshot = LevelSnapshot.capture(level, snapshotSections);
+        SnowedCells snowedCells = operationExecutor.getSnowedCells();
+
+        CompletableFuture<List<SnowOperation>> future = CompletableFuture
+                .supplyAsync(() -> algorithm.calculateCatchUpOperations(
+                        sectionManager, cacheManager, snapshot, snowedCells, weights, cycles), service.getExecutor())
+                // 在工作线程上按位置合并，每个位置只写入一次
+                .thenApply(SnowOperation::coalesce)
+                .orTimeout(5000, java.util.concurrent.TimeUnit.MILLISECONDS)
+                .exceptionally(throwable -> {
+                    ModernFurniture.LOGGER.warn("积雪补齐计算异常", throwable);
+                    return Collections.emptyList();
+                });
+
+        pendingOperations.set(future);
+    }
+
+    /**
+     * 定期按玩家距离更新细节层级
+     */
+    private void updateLod(long currentTime) {
+        if (currentTime - lastLodCheck >= LOD_CHECK_INTERVAL || currentTime < lastLodCheck) {
+            lastLodCheck = currentTime;
+            lod = SnowLod.of(level, room.getBounds());
+        }
+    }
+
     /**
      * 计算降雪操作
      */
-    private List<SnowOperation> calculateSnowOperations() {
+    private List<SnowOperation> calculateSnowOperations(LevelSnapshot snapshot, SnowedCells snowedCells) {
         return algorithm.calculateSnowOperations(
                 sectionManager,
                 cacheManager,
-                level,
-                operationExecutor.getSnowedPositions()
+                snapshot,
+                snowedCells,
+                weights
         );
     }
 
+    /**
+     * 收集房间所在分区，以及放置检查需要读取的下方分区
+     */
+    private static LongSet collectSnapshotSections(RoomShape room) {
+        LongOpenHashSet sections = new LongOpenHashSet(room.getSectionCount() * 2);
+        for (int i = 0; i < room.getSectionCount(); i++) {
+            long key = room.getSectionKey(i);
+            sections.add(key);
+            sections.add(SectionPos.offset(key, 0, -1, 0));
+        }
+        return sections;
+    }
+
     /**
      * 取消待处理的操作
      */
@@ -240,45 +586,28 @@ public class SnowManager {
         }
     }
 
-    /**
-     * 重置状态
-     */
-    private void resetState() {
-        snowCycles = 0;
-        lastSnowTime = 0;
+    private void markSavedDataDirty() {
+        if (savedData != null) {
+            savedData.setDirty();
+        }
     }
 
     /**
-     * 计算当前覆盖率
+     * 通知客户端移除覆盖层，覆盖层积雪记录随管理器丢弃
      */
-    private double calculateCurrentCoverage() {
-        if (roomBlocks.isEmpty()) {
-            return 0.0;
-        }
-
-        int validPositions = 0;
-        int snowedValidPositions = 0;
-        Set<BlockPos> snowedPositions = operationExecutor.getSnowedPositions();
-
-        for (BlockPos pos : roomBlocks) {
-            BlockState state = level.getBlockState(pos);
-
-            if (state.isAir()) {
-                BlockPos belowPos = pos.below();
-                BlockState belowState = level.getBlockState(belowPos);
-                if (!belowState.isAir() && belowState.isSolidRender(level, belowPos)) {
-                    validPositions++;
-                    if (snowedPositions.contains(pos)) {
-                        snowedValidPositions++;
-                    }
-                }
-            } else if (state.getBlock() == Blocks.SNOW) {
-                validPositions++;
-                snowedValidPositions++;
-            }
+    private void clearOverlay() {
+        if (overlay != null) {
+            overlay.clear();
         }
+    }
 
-        return validPositions > 0 ? (double) snowedValidPositions / validPositions : 0.0;
+    /**
+     * 重置状态
+     */
+    private void resetState() {
+        snowCycles = 0;
+        virtualCycles = 0;
+        lastSnowTime = 0;
     }
 
     /**
@@ -296,6 +625,6 @@ public class SnowManager {
         if (SnowGenerationConfig.snowCoverageRatio <= 0) {
             return false;
         }
-        return calculateCurrentCoverage() >= SnowGenerationConfig.snowCoverageRatio;
+        return coverageTracker.getCoverage() >= SnowGenerationConfig.snowCoverageRatio;
     }
 }
\ No newline at end of file
@@ -0,0 +1,177 @@
+package com.flechazo.modernfurniture.util.snow;
+
+import com.flechazo.modernfurniture.util.room.RoomShape;
+import it.unimi.dsi.fastutil.longs.Long2ByteLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ByteMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.SnowLayerBlock;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * 积雪融化队列
+ *
+ * <p>房间停止制冷后，积雪不再一次性清除，而是逐层融化：
+ * 每次处理一个位置只移除一层，最后一层融化后变为空气。</p>
+ *
+ * <h2>调度方式</h2>
+ * <ul>
+ *   <li>按分区轮询，分区内按插入顺序轮询，融化一层后的位置移到分区末尾</li>
+ *   <li>每刻最多融化{@link com.flechazo.modernfurniture.config.module.SnowGenerationConfig#snowMeltPerTick}层</li>
+ *   <li>所在区块未加载的分区跳过，等待下一轮</li>
+ *   <li>房间重新开始制冷时，积雪管理器按房间分区领回尚未融化的位置，融化随即中断</li>
+ * </ul>
+ *
+ * <p>队列由{@link SnowSavedData}持有并随世界保存。只能在服务器线程上访问。</p>
+ */
+public class SnowMeltQueue {
+    // 分区坐标 -> (方块坐标 -> 剩余层数)，分区存在时必然在轮询队列中
+    private final Long2ObjectOpenHashMap<Long2ByteLinkedOpenHashMap> sections = new Long2ObjectOpenHashMap<>();
+    private final LongArrayFIFOQueue order = new LongArrayFIFOQueue();
+    private int size = 0;
+
+    /**
+     * 加入待融化的积雪
+     *
+     * @param pos    打包坐标
+     * @param layers 当前层数
+     */
+    void add(long pos, int layers) {
+        long sectionKey = SectionPos.blockToSection(pos);
+        Long2ByteLinkedOpenHashMap section = sections.get(sectionKey);
+        if (section == null) {
+            section = new Long2ByteLinkedOpenHashMap();
+            sections.put(sectionKey, section);
+            order.enqueue(sectionKey);
+        }
+        if (section.put(pos, (byte) layers) == section.defaultReturnValue()) {
+            size++;
+        }
+    }
+
+    /**
+     * 将房间内尚未融化的积雪交还给积雪管理器
+     *
+     * @param manager 积雪管理器
+     * @param room    房间形状
+     * @return 领回的位置数量
+     */
+    int adopt(SnowManager manager, RoomShape room) {
+        if (size == 0) {
+            return 0;
+        }
+
+        int adopted = 0;
+        BlockPos.MutableBlockPos cursor = new BlockPos.MutableBlockPos();
+        for (int i = 0; i < room.getSectionCount(); i++) {
+            Long2ByteLinkedOpenHashMap section = sections.get(room.getSectionKey(i));
+            if (section == null) {
+                continue;
+            }
+
+            // 空分区留给轮询移除，保证分区与轮询队列一一对应
+            ObjectIterator<Long2ByteMap.Entry> iterator = section.long2ByteEntrySet().fastIterator();
+            while (iterator.hasNext()) {
+                Long2ByteMap.Entry entry = iterator.next();
+                if (room.contains(cursor.set(entry.getLongKey()))) {
+                    manager.restoreSnow(entry.getLongKey(), entry.getByteValue());
+                    iterator.remove();
+                    adopted++;
+                }
+            }
+        }
+        size -= adopted;
+        return adopted;
+    }
+
+    /**
+     * 在预算内融化积雪
+     *
+     * @param level     服务器世界
+     * @param maxLayers 本次最多融化的层数
+     * @return 实际融化的层数
+     */
+    int tick(ServerLevel level, int maxLayers) {
+        int melted = 0;
+        int visited = 0;
+        int sectionCount = order.size();
+
+        while (melted < maxLayers && visited < sectionCount && !order.isEmpty()) {
+            long sectionKey = order.dequeueLong();
+            visited++;
+            Long2ByteLinkedOpenHashMap section = sections.get(sectionKey);
+            if (section.isEmpty()) {
+                sections.remove(sectionKey);
+                continue;
+            }
+
+            if (level.getChunkSource().getChunkNow(SectionPos.x(sectionKey), SectionPos.z(sectionKey)) != null) {
+                melted += meltSection(level, section, maxLayers - melted);
+            }
+
+            if (section.isEmpty()) {
+                sections.remove(sectionKey);
+            } else {
+                order.enqueue(sectionKey);
+            }
+        }
+        return melted;
+    }
+
+    /**
+     * 遍历待融化的积雪，保存时调用
+     */
+    void forEach(SnowOperationExecutor.SnowCellConsumer consumer) {
+        for (Long2ByteLinkedOpenHashMap section : sections.values()) {
+            for (Long2ByteMap.Entry entry : section.long2ByteEntrySet()) {
+                consumer.accept(entry.getLongKey(), entry.getByteValue());
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 分区内每个位置融化一层，最多处理maxLayers个位置
+     */
+    private int meltSection(ServerLevel level, Long2ByteLinkedOpenHashMap section, int maxLayers) {
+        BlockPos.MutableBlockPos cursor = new BlockPos.MutableBlockPos();
+        int count = Math.min(maxLayers, section.size());
+        int melted = 0;
+
+        for (int i = 0; i < count; i++) {
+            long pos = section.firstLongKey();
+            BlockState current = level.getBlockState(cursor.set(pos));
+            if (current.getBlock() != Blocks.SNOW) {
+                // 积雪已被玩家或其他方式移除
+                section.removeFirstByte();
+                size--;
+                continue;
+            }
+
+            int layers = current.getValue(SnowLayerBlock.LAYERS);
+            if (layers > 1) {
+                level.setBlock(cursor, current.setValue(SnowLayerBlock.LAYERS, layers - 1), Block.UPDATE_ALL);
+                section.putAndMoveToLast(pos, (byte) (layers - 1));
+            } else {
+                level.setBlock(cursor, Blocks.AIR.defaultBlockState(), Block.UPDATE_ALL);
+                section.removeFirstByte();
+                size--;
+            }
+            melted++;
+        }
+        return melted;
+    }
+}
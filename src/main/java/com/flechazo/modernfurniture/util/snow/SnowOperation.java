@@ -1,16 +1,66 @@
 package com.flechazo.modernfurniture.util.snow;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
 import net.minecraft.core.BlockPos;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * 积雪操作记录
  *
  * @param pos       积雪操作的目标位置
  * @param type      操作类型（放置新雪或添加层级）
- * @param layers    积雪层数（用于新雪放置）
+ * @param layers    层数增量：放置新雪时为新雪层数，添加层级时为增加的层数，写入时不超过8层
  * @param timestamp 操作时间戳
  */
 public record SnowOperation(BlockPos pos, OperationType type, int layers, long timestamp) {
+    public static final int MAX_LAYERS = 8;
+
+    /**
+     * 合并同一位置的操作，每个位置只保留一个操作
+     *
+     * <p>结果按位置第一次出现的顺序排列，以下组合的合并结果与依次执行相同：</p>
+     * <ul>
+     *   <li>放置新雪后添加层级：合并为层数相加的放置新雪</li>
+     *   <li>添加层级后再添加层级：合并为层数相加的添加层级</li>
+     *   <li>重复放置新雪：后面的放置不会生效，保留第一个</li>
+     * </ul>
+     *
+     * <p>添加层级后放置新雪无法合并为一个操作：依次执行时积雪位置只添加层级，空气位置只放置新雪，
+     * 取决于写入时的方块。该组合不会出现在传入的列表中，因为只对单次计算的结果调用，
+     * 而{@link SnowAlgorithm}在同一份快照中只对已有积雪的位置添加层级、只在没有积雪的位置放置新雪，
+     * 两类候选互不相交。若仍然出现，按添加层级合并，空气位置上的这一操作不会生效。</p>
+     *
+     * @param operations 操作列表
+     * @return 合并后的操作列表，没有重复位置时返回原列表
+     */
+    public static List<SnowOperation> coalesce(List<SnowOperation> operations) {
+        if (operations.size() < 2) {
+            return operations;
+        }
+
+        Long2ObjectLinkedOpenHashMap<SnowOperation> byPos = new Long2ObjectLinkedOpenHashMap<>(operations.size());
+        for (SnowOperation op : operations) {
+            long key = op.pos().asLong();
+            SnowOperation previous = byPos.putIfAbsent(key, op);
+            if (previous != null) {
+                byPos.put(key, previous.merge(op));
+            }
+        }
+
+        return byPos.size() == operations.size() ? operations : new ArrayList<>(byPos.values());
+    }
+
+    /**
+     * 合并之后执行的同一位置操作，后面的放置新雪总是被忽略
+     */
+    private SnowOperation merge(SnowOperation next) {
+        if (next.type == OperationType.PLACE_NEW) {
+            return this;
+        }
+        return new SnowOperation(pos, type, Math.min(MAX_LAYERS, layers + next.layers), timestamp);
+    }
 
     /**
      * 积雪操作类型枚举
@@ -26,4 +76,4 @@ public record SnowOperation(BlockPos pos, OperationType type, int layers, long t
          */
         ADD_LAYER
     }
-}
\ No newline at end of file
+}
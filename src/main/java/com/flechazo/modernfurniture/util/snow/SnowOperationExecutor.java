@@ -1,14 +1,26 @@
 package com.flechazo.modernfurniture.util.snow;
 
 import com.flechazo.modernfurniture.ModernFurniture;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.core.SectionPos;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ThreadedLevelLightEngine;
+import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.SnowLayerBlock;
 import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.lighting.LightEngine;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 /**
  * 积雪操作执行器
@@ -17,77 +29,181 @@ import java.util.concurrent.ConcurrentHashMap;
  *
  * <h2>主要功能</h2>
  * <ul>
- *   <li>积雪方块的放置和移除</li>
+ *   <li>按分区批量写入积雪方块，以及积雪的移除</li>
  *   <li>积雪层级管理</li>
  *   <li>积雪状态跟踪</li>
  * </ul>
+ *
+ * <p>覆盖层模式下不写入世界，只更新积雪记录并交给{@link SnowOverlaySync}同步到客户端。</p>
  */
 public class SnowOperationExecutor {
+    private static final Heightmap.Types[] HEIGHTMAP_TYPES = {
+            Heightmap.Types.MOTION_BLOCKING,
+            Heightmap.Types.MOTION_BLOCKING_NO_LEAVES,
+            Heightmap.Types.OCEAN_FLOOR,
+            Heightmap.Types.WORLD_SURFACE
+    };
+
     private final ServerLevel level;
-    private final Map<BlockPos, Integer> snowLayers;
-    private final Set<BlockPos> snowedPositions;
+    private final SnowCoverageTracker coverageTracker;
+    @Nullable
+    private final SnowOverlaySync overlay;
+    private final SnowLayerRecords snowLayers = new SnowLayerRecords();
+    // 与snowLayers的键相同，供积雪计算创建只读快照
+    private final SnowedCells.Builder snowedCells = new SnowedCells.Builder();
+    // 下标为层数减一的位置数量，只在服务器线程上修改
+    private final int[] layerHistogram = new int[SnowOperation.MAX_LAYERS];
+    @Nullable
+    private Consumer<BlockPos> fullSnowListener;
 
     /**
      * 构造操作执行器
      *
-     * @param level 服务器世界
+     * @param level           服务器世界
+     * @param coverageTracker 覆盖率计数器，积雪写入后通知
+     * @param overlay         覆盖层同步，为null时积雪写入世界
      */
-    public SnowOperationExecutor(ServerLevel level) {
+    public SnowOperationExecutor(ServerLevel level, SnowCoverageTracker coverageTracker, @Nullable SnowOverlaySync overlay) {
         this.level = level;
-        this.snowLayers = new ConcurrentHashMap<>();
-        this.snowedPositions = ConcurrentHashMap.newKeySet();
+        this.coverageTracker = coverageTracker;
+        this.overlay = overlay;
+    }
+
+    /**
+     * 设置积雪达到满层时的回调，满层积雪的上方成为新的地面，覆盖层模式下不会回调
+     *
+     * @param fullSnowListener 接收满层积雪的位置
+     */
+    public void setFullSnowListener(Consumer<BlockPos> fullSnowListener) {
+        this.fullSnowListener = fullSnowListener;
     }
 
     /**
      * 执行积雪操作列表
      *
+     * <p>操作按区块分区分组，每个分区只加锁一次并直接写入方块状态，
+     * 不触发邻居更新，也不调用方块的放置回调。客户端同步由区块的批量方块更新包完成。</p>
+     *
      * @param operations 操作列表
      */
     public void executeOperations(List<SnowOperation> operations) {
+        if (operations.isEmpty()) {
+            return;
+        }
+
+        if (overlay != null) {
+            executeOverlay(operations);
+            return;
+        }
+
+        Long2ObjectLinkedOpenHashMap<List<SnowOperation>> bySection = new Long2ObjectLinkedOpenHashMap<>();
         for (SnowOperation op : operations) {
+            bySection.computeIfAbsent(SectionPos.asLong(op.pos()), key -> new ArrayList<>()).add(op);
+        }
+
+        for (Long2ObjectMap.Entry<List<SnowOperation>> entry : bySection.long2ObjectEntrySet()) {
             try {
-                switch (op.type()) {
-                    case PLACE_NEW -> {
-                        BlockState currentState = level.getBlockState(op.pos());
-                        if (currentState.isAir()) {
-                            placeInitialSnow(op.pos());
-                        }
-                    }
-                    case ADD_LAYER -> {
-                        BlockState currentState = level.getBlockState(op.pos());
-                        if (currentState.getBlock() == Blocks.SNOW) {
-                            addSnowLayer(op.pos());
-                        }
-                    }
-                }
+                writeSection(entry.getLongKey(), entry.getValue());
             } catch (Exception e) {
-                ModernFurniture.LOGGER.warn("执行降雪操作失败: {}", op.pos(), e);
+                ModernFurniture.LOGGER.warn("执行降雪操作失败: {}", SectionPos.of(entry.getLongKey()), e);
             }
         }
     }
 
     /**
      * 清除所有积雪
+     *
+     * <p>与放置相同按分区批量写入空气，每个分区只加锁一次，不触发邻居更新。
+     * 记录中已经不是积雪的位置保持不变。</p>
      */
     public void clearAllSnow() {
-        for (BlockPos pos : new HashSet<>(snowedPositions)) {
-            BlockState currentState = level.getBlockState(pos);
-            if (currentState.getBlock() == Blocks.SNOW) {
-                level.setBlock(pos, Blocks.AIR.defaultBlockState(), 3);
+        if (overlay == null) {
+            Long2ObjectLinkedOpenHashMap<LongArrayList> bySection = new Long2ObjectLinkedOpenHashMap<>();
+            snowLayers.forEach((pos, layers) ->
+                    bySection.computeIfAbsent(SectionPos.blockToSection(pos), key -> new LongArrayList()).add(pos));
+
+            for (Long2ObjectMap.Entry<LongArrayList> entry : bySection.long2ObjectEntrySet()) {
+                try {
+                    clearSection(entry.getLongKey(), entry.getValue());
+                } catch (Exception e) {
+                    ModernFurniture.LOGGER.warn("清除积雪失败: {}", SectionPos.of(entry.getLongKey()), e);
+                }
             }
         }
 
-        snowedPositions.clear();
+        snowedCells.clear();
         snowLayers.clear();
+        Arrays.fill(layerHistogram, 0);
+        if (overlay != null) {
+            overlay.clear();
+        }
+    }
+
+    /**
+     * 恢复存档中记录的积雪，不读取也不写入世界
+     *
+     * @param pos    打包坐标
+     * @param layers 积雪层数
+     */
+    public void restore(long pos, int layers) {
+        BlockPos immutable = BlockPos.of(pos);
+        snowedCells.add(pos);
+        putLayers(pos, layers);
+        coverageTracker.markChanged(immutable);
+        if (overlay != null) {
+            overlay.set(pos, layers);
+        } else {
+            notifyIfFull(immutable, layers);
+        }
+    }
+
+    /**
+     * 世界中的积雪被破坏、替换或改变层数后同步记录，覆盖层模式下世界中没有积雪，记录不受影响
+     *
+     * @param pos   变化位置
+     * @param state 变化后的方块状态
+     */
+    public void onBlockChanged(BlockPos pos, BlockState state) {
+        if (overlay != null) {
+            return;
+        }
+        long packed = pos.asLong();
+        int layers = snowLayers.get(packed);
+        if (layers == 0) {
+            return;
+        }
+
+        if (state.getBlock() != Blocks.SNOW) {
+            snowedCells.remove(packed);
+            removeLayers(packed);
+        } else if (state.getValue(SnowLayerBlock.LAYERS) != layers) {
+            putLayers(packed, state.getValue(SnowLayerBlock.LAYERS));
+        }
+    }
+
+    /**
+     * 检查位置是否有已记录的积雪
+     */
+    public boolean hasSnow(BlockPos pos) {
+        return snowLayers.contains(pos.asLong());
+    }
+
+    /**
+     * 遍历已记录的积雪，不复制集合
+     *
+     * @param consumer 接收打包坐标与层数
+     */
+    public void forEachSnow(SnowCellConsumer consumer) {
+        snowLayers.forEach(consumer);
     }
 
     /**
-     * 获取积雪位置集合
+     * 获取积雪位置的只读快照，成本与积雪所在分区数量成正比
      *
-     * @return 积雪位置集合
+     * @return 积雪位置快照，可以交给工作线程读取
      */
-    public Set<BlockPos> getSnowedPositions() {
-        return new HashSet<>(snowedPositions);
+    public SnowedCells getSnowedCells() {
+        return snowedCells.snapshot();
     }
 
     /**
@@ -96,53 +212,278 @@ public class SnowOperationExecutor {
      * @return 积雪位置数量
      */
     public int getSnowedPositionsCount() {
-        return snowedPositions.size();
+        return snowedCells.size();
     }
 
     /**
-     * 获取积雪层级映射
+     * 复制层数分布，成本与层数上限成正比
      *
-     * @return 积雪层级映射
+     * @return 下标为层数减一的位置数量
      */
-    public Map<BlockPos, Integer> getSnowLayers() {
-        return new HashMap<>(snowLayers);
+    public int[] getLayerHistogram() {
+        return layerHistogram.clone();
+    }
+
+    /**
+     * 从游标处分页读取积雪位置与层数
+     *
+     * <p>成本只与页大小成正比；两次调用之间积雪发生变化时，分页可能重复或遗漏位置。</p>
+     *
+     * @param cursor   起始游标，第一页为0，之后使用{@link SnowLayerPage#nextCursor()}
+     * @param pageSize 每页位置数量
+     * @return 该页的积雪
+     */
+    public SnowLayerPage getSnowLayerPage(int cursor, int pageSize) {
+        return snowLayers.page(cursor, pageSize);
+    }
+
+    /**
+     * 在一个分区内写入积雪
+     *
+     * @param sectionKey 分区坐标
+     * @param operations 该分区内的操作
+     */
+    private void writeSection(long sectionKey, List<SnowOperation> operations) {
+        // 区块已卸载时放弃本批操作，不为积雪加载区块
+        LevelChunk chunk = getLoadedChunk(sectionKey);
+        if (chunk == null) {
+            return;
+        }
+
+        LevelChunkSection section = chunk.getSection(chunk.getSectionIndexFromSectionY(SectionPos.y(sectionKey)));
+        boolean wasEmpty = section.hasOnlyAir();
+        List<SnowOperation> written = new ArrayList<>(operations.size());
+        List<BlockState> previousStates = new ArrayList<>(operations.size());
+
+        section.acquire();
+        try {
+            for (SnowOperation op : operations) {
+                BlockPos pos = op.pos();
+                int x = pos.getX() & 15;
+                int y = pos.getY() & 15;
+                int z = pos.getZ() & 15;
+                BlockState current = section.getBlockState(x, y, z);
+                BlockState next = nextState(op, current);
+                if (next != null) {
+                    section.setBlockState(x, y, z, next, false);
+                    written.add(op);
+                    previousStates.add(current);
+                }
+            }
+        } finally {
+            section.release();
+        }
+
+        if (written.isEmpty()) {
+            return;
+        }
+
+        ThreadedLevelLightEngine lightEngine = updateSectionStatus(sectionKey, section, wasEmpty);
+        for (int i = 0; i < written.size(); i++) {
+            BlockPos pos = written.get(i).pos();
+            BlockState state = section.getBlockState(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15);
+            afterWrite(chunk, lightEngine, pos, previousStates.get(i), state);
+            recordWrite(pos, state);
+        }
+
+        chunk.setUnsaved(true);
     }
 
     /**
-     * 放置初始积雪
+     * 在一个分区内把积雪替换为空气
      *
-     * @param pos 位置
-     * @return 是否成功放置
+     * @param sectionKey 分区坐标
+     * @param positions  该分区内记录的积雪位置
+     */
+    private void clearSection(long sectionKey, LongArrayList positions) {
+        LevelChunk chunk = getLoadedChunk(sectionKey);
+        if (chunk == null) {
+            return;
+        }
+
+        LevelChunkSection section = chunk.getSection(chunk.getSectionIndexFromSectionY(SectionPos.y(sectionKey)));
+        boolean wasEmpty = section.hasOnlyAir();
+        BlockState air = Blocks.AIR.defaultBlockState();
+        LongArrayList cleared = new LongArrayList(positions.size());
+        List<BlockState> previousStates = new ArrayList<>(positions.size());
+
+        section.acquire();
+        try {
+            for (int i = 0; i < positions.size(); i++) {
+                long pos = positions.getLong(i);
+                int x = BlockPos.getX(pos) & 15;
+                int y = BlockPos.getY(pos) & 15;
+                int z = BlockPos.getZ(pos) & 15;
+                BlockState current = section.getBlockState(x, y, z);
+                if (current.getBlock() == Blocks.SNOW) {
+                    section.setBlockState(x, y, z, air, false);
+                    cleared.add(pos);
+                    previousStates.add(current);
+                }
+            }
+        } finally {
+            section.release();
+        }
+
+        if (cleared.isEmpty()) {
+            return;
+        }
+
+        ThreadedLevelLightEngine lightEngine = updateSectionStatus(sectionKey, section, wasEmpty);
+        for (int i = 0; i < cleared.size(); i++) {
+            BlockPos pos = BlockPos.of(cleared.getLong(i));
+            afterWrite(chunk, lightEngine, pos, previousStates.get(i), air);
+            coverageTracker.markChanged(pos);
+        }
+
+        chunk.setUnsaved(true);
+    }
+
+    /**
+     * 获取分区所在的已加载区块，分区超出世界高度或区块未加载时返回null
+     */
+    @Nullable
+    private LevelChunk getLoadedChunk(long sectionKey) {
+        int sectionY = SectionPos.y(sectionKey);
+        if (sectionY < level.getMinSection() || sectionY >= level.getMaxSection()) {
+            return null;
+        }
+        return level.getChunkSource().getChunkNow(SectionPos.x(sectionKey), SectionPos.z(sectionKey));
+    }
+
+    /**
+     * 分区在空与非空之间变化时通知光照引擎
+     */
+    private ThreadedLevelLightEngine updateSectionStatus(long sectionKey, LevelChunkSection section, boolean wasEmpty) {
+        ThreadedLevelLightEngine lightEngine = level.getChunkSource().getLightEngine();
+        boolean isEmpty = section.hasOnlyAir();
+        if (wasEmpty != isEmpty) {
+            lightEngine.updateSectionStatus(SectionPos.of(sectionKey), isEmpty);
+        }
+        return lightEngine;
+    }
+
+    /**
+     * 分区写入后逐个位置更新高度图、光照、客户端与下方方块形状
+     */
+    private void afterWrite(LevelChunk chunk, ThreadedLevelLightEngine lightEngine, BlockPos pos, BlockState previous, BlockState state) {
+        for (Heightmap.Types type : HEIGHTMAP_TYPES) {
+            chunk.getOrCreateHeightmapUnprimed(type).update(pos.getX() & 15, pos.getY(), pos.getZ() & 15, state);
+        }
+        // 与1.20.1的Level#setBlock顺序一致：先更新高度图，再排队光照检查
+        if (LightEngine.hasDifferentLightProperties(chunk, pos, previous, state)) {
+            lightEngine.checkBlock(pos);
+        }
+        // 只通知客户端与寻路，同一分区的多处变化会合并为一个分区更新包
+        level.sendBlockUpdated(pos, previous, state, Block.UPDATE_CLIENTS);
+        // 放置或移除积雪时，下方的草方块等随之切换积雪状态；只改变层数时不需要
+        if (previous.getBlock() != state.getBlock()) {
+            updateShapeBelow(pos, state);
+        }
+    }
+
+    /**
+     * 放置或移除积雪后只更新下方方块的形状，使草方块、灰化土和菌丝切换积雪状态，
+     * 其余方向的邻居不受积雪影响
+     */
+    private void updateShapeBelow(BlockPos pos, BlockState state) {
+        BlockPos below = pos.below();
+        BlockState belowState = level.getBlockState(below);
+        BlockState updated = belowState.updateShape(Direction.UP, state, level, below, pos);
+        if (updated != belowState) {
+            Block.updateOrDestroy(belowState, updated, level, below, Block.UPDATE_CLIENTS);
+        }
+    }
+
+    /**
+     * 覆盖层模式下只按记录的层数更新，不读取也不写入世界
      */
-    private boolean placeInitialSnow(BlockPos pos) {
-        BlockState snowState = Blocks.SNOW.defaultBlockState().setValue(SnowLayerBlock.LAYERS, 1);
-        if (level.setBlock(pos, snowState, 3)) {
-            snowedPositions.add(pos);
-            snowLayers.put(pos, 1);
-            return true;
+    private void executeOverlay(List<SnowOperation> operations) {
+        for (SnowOperation op : operations) {
+            BlockPos pos = op.pos();
+            long packed = pos.asLong();
+            int current = snowLayers.get(packed);
+            int next = switch (op.type()) {
+                case PLACE_NEW -> current == 0 ? Math.min(SnowOperation.MAX_LAYERS, op.layers()) : -1;
+                case ADD_LAYER -> current > 0 && current < SnowOperation.MAX_LAYERS
+                        ? Math.min(SnowOperation.MAX_LAYERS, current + op.layers()) : -1;
+            };
+            if (next > 0) {
+                snowedCells.add(packed);
+                putLayers(packed, next);
+                coverageTracker.markChanged(pos);
+                overlay.set(packed, next);
+            }
         }
-        return false;
     }
 
     /**
-     * 添加积雪层
+     * 计算操作写入后的方块状态，操作已按位置合并，层数增量一次写入
      *
-     * @param pos 位置
-     * @return 是否成功添加
+     * @return 新状态，操作不适用于当前方块时返回null
      */
-    private boolean addSnowLayer(BlockPos pos) {
-        BlockState currentState = level.getBlockState(pos);
-        if (currentState.getBlock() == Blocks.SNOW) {
-            int currentLayers = currentState.getValue(SnowLayerBlock.LAYERS);
-            if (currentLayers < 8) {
-                int newLayers = currentLayers + 1;
-                BlockState newState = currentState.setValue(SnowLayerBlock.LAYERS, newLayers);
-                if (level.setBlock(pos, newState, 3)) {
-                    snowLayers.put(pos, newLayers);
-                    return true;
+    @Nullable
+    private static BlockState nextState(SnowOperation op, BlockState current) {
+        return switch (op.type()) {
+            case PLACE_NEW -> current.isAir()
+                    ? Blocks.SNOW.defaultBlockState().setValue(SnowLayerBlock.LAYERS, Math.min(SnowOperation.MAX_LAYERS, op.layers()))
+                    : null;
+            case ADD_LAYER -> {
+                if (current.getBlock() != Blocks.SNOW) {
+                    yield null;
                 }
+                int layers = current.getValue(SnowLayerBlock.LAYERS);
+                yield layers < SnowOperation.MAX_LAYERS
+                        ? current.setValue(SnowLayerBlock.LAYERS, Math.min(SnowOperation.MAX_LAYERS, layers + op.layers()))
+                        : null;
             }
+        };
+    }
+
+    /**
+     * 更新位置的层数并维护层数分布
+     */
+    private void putLayers(long pos, int layers) {
+        int previous = snowLayers.put(pos, layers);
+        if (previous > 0) {
+            layerHistogram[previous - 1]--;
         }
-        return false;
+        layerHistogram[layers - 1]++;
+    }
+
+    /**
+     * 移除位置的层数记录并维护层数分布
+     */
+    private void removeLayers(long pos) {
+        int previous = snowLayers.remove(pos);
+        if (previous > 0) {
+            layerHistogram[previous - 1]--;
+        }
+    }
+
+    /**
+     * 记录已写入的积雪，满层积雪会成为实心地面，覆盖率计数同时检查上方位置
+     */
+    private void recordWrite(BlockPos pos, BlockState state) {
+        BlockPos immutable = pos.immutable();
+        int layers = state.getValue(SnowLayerBlock.LAYERS);
+        snowedCells.add(immutable.asLong());
+        putLayers(immutable.asLong(), layers);
+        coverageTracker.markChanged(immutable);
+        notifyIfFull(immutable, layers);
+    }
+
+    private void notifyIfFull(BlockPos pos, int layers) {
+        if (layers == SnowOperation.MAX_LAYERS && fullSnowListener != null) {
+            fullSnowListener.accept(pos);
+        }
+    }
+
+    /**
+     * 积雪回调
+     */
+    @FunctionalInterface
+    public interface SnowCellConsumer {
+        void accept(long pos, int layers);
     }
-}
\ No newline at end of file
+}
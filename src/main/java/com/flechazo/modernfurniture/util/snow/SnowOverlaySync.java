@@ -0,0 +1,159 @@
+package com.flechazo.modernfurniture.util.snow;
+
+import com.flechazo.modernfurniture.config.module.SnowGenerationConfig;
+import com.flechazo.modernfurniture.network.NetworkHandler;
+import com.flechazo.modernfurniture.network.module.SnowOverlayPacket;
+import it.unimi.dsi.fastutil.longs.Long2ByteMap;
+import it.unimi.dsi.fastutil.longs.Long2ByteOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 积雪覆盖层同步
+ *
+ * <p>覆盖层模式下积雪不写入世界，只按分区记录层数并定期发送给附近的玩家，由客户端绘制。</p>
+ *
+ * <h2>同步方式</h2>
+ * <ul>
+ *   <li>每{@link #SYNC_INTERVAL}刻检查一次{@link SnowGenerationConfig#snowVirtualDistance}以内的玩家</li>
+ *   <li>新进入范围的玩家收到全部分区，已在范围内的玩家只收到变化过的分区</li>
+ *   <li>离开范围的玩家收到移除包，房间关闭时所有玩家收到移除包</li>
+ * </ul>
+ *
+ * <p>只能在服务器线程上访问。</p>
+ */
+public class SnowOverlaySync {
+    private static final long SYNC_INTERVAL = 20;
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private final ServerLevel level;
+    private final int id = NEXT_ID.incrementAndGet();
+    // 分区坐标 -> (方块坐标 -> 层数)
+    private final Long2ObjectOpenHashMap<Long2ByteOpenHashMap> sections = new Long2ObjectOpenHashMap<>();
+    private final LongOpenHashSet dirtySections = new LongOpenHashSet();
+    private final Set<UUID> viewers = new HashSet<>();
+    private long lastSync = Long.MIN_VALUE;
+
+    public SnowOverlaySync(ServerLevel level) {
+        this.level = level;
+    }
+
+    /**
+     * 记录位置的积雪层数
+     *
+     * @param pos    打包坐标
+     * @param layers 层数
+     */
+    void set(long pos, int layers) {
+        long sectionKey = SectionPos.blockToSection(pos);
+        sections.computeIfAbsent(sectionKey, key -> new Long2ByteOpenHashMap()).put(pos, (byte) layers);
+        dirtySections.add(sectionKey);
+    }
+
+    /**
+     * 清除全部积雪并通知所有正在查看的玩家
+     */
+    void clear() {
+        sections.clear();
+        dirtySections.clear();
+        SnowOverlayPacket packet = SnowOverlayPacket.remove(id);
+        for (UUID viewer : viewers) {
+            ServerPlayer player = level.getServer().getPlayerList().getPlayer(viewer);
+            if (player != null) {
+                NetworkHandler.sendToClient(packet, player);
+            }
+        }
+        viewers.clear();
+    }
+
+    /**
+     * 按间隔向附近玩家同步
+     *
+     * @param currentTime 当前游戏时间
+     * @param bounds      房间包围盒
+     */
+    void tick(long currentTime, BoundingBox bounds) {
+        if (currentTime - lastSync < SYNC_INTERVAL && currentTime >= lastSync) {
+            return;
+        }
+        lastSync = currentTime;
+
+        double range = SnowGenerationConfig.snowVirtualDistance;
+        Set<UUID> inRange = new HashSet<>();
+        SnowOverlayPacket full = null;
+        SnowOverlayPacket changes = null;
+
+        for (ServerPlayer player : level.players()) {
+            if (SnowLod.distanceSqr(bounds, player.getX(), player.getY(), player.getZ()) > range * range) {
+                continue;
+            }
+            inRange.add(player.getUUID());
+
+            if (!viewers.contains(player.getUUID())) {
+                if (full == null) {
+                    full = createPacket(true, sections.keySet());
+                }
+                NetworkHandler.sendToClient(full, player);
+            } else if (!dirtySections.isEmpty()) {
+                if (changes == null) {
+                    changes = createPacket(false, dirtySections);
+                }
+                NetworkHandler.sendToClient(changes, player);
+            }
+        }
+
+        viewers.removeAll(inRange);
+        SnowOverlayPacket remove = SnowOverlayPacket.remove(id);
+        for (UUID viewer : viewers) {
+            ServerPlayer player = level.getServer().getPlayerList().getPlayer(viewer);
+            if (player != null) {
+                NetworkHandler.sendToClient(remove, player);
+            }
+        }
+        viewers.clear();
+        viewers.addAll(inRange);
+        dirtySections.clear();
+    }
+
+    /**
+     * 复制分区数据，包可能在网络线程上编码
+     */
+    private SnowOverlayPacket createPacket(boolean replaceAll, LongCollection sectionKeys) {
+        long[] keys = new long[sectionKeys.size()];
+        short[][] indices = new short[keys.length][];
+        byte[][] layers = new byte[keys.length][];
+
+        int s = 0;
+        for (LongIterator iterator = sectionKeys.iterator(); iterator.hasNext(); s++) {
+            long key = iterator.nextLong();
+            Long2ByteOpenHashMap section = sections.get(key);
+            int count = section != null ? section.size() : 0;
+            keys[s] = key;
+            indices[s] = new short[count];
+            layers[s] = new byte[count];
+
+            if (section != null) {
+                int i = 0;
+                for (Long2ByteMap.Entry entry : section.long2ByteEntrySet()) {
+                    long pos = entry.getLongKey();
+                    indices[s][i] = SectionPositions.localIndex(BlockPos.getX(pos), BlockPos.getY(pos), BlockPos.getZ(pos));
+                    layers[s][i] = entry.getByteValue();
+                    i++;
+                }
+            }
+        }
+        return new SnowOverlayPacket(id, replaceAll, keys, indices, layers);
+    }
+}
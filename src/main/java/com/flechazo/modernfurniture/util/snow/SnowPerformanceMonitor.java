@@ -4,9 +4,6 @@ import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -27,8 +24,10 @@ public class SnowPerformanceMonitor {
     private final AtomicLong totalOperations = new AtomicLong();
     private final AtomicLong totalProcessTime = new AtomicLong();
     private final Queue<Long> recentTimes = new ConcurrentLinkedQueue<>();
+    // 最近记录的数量与总和，平均值不必遍历队列
+    private final AtomicLong recentCount = new AtomicLong();
+    private final AtomicLong recentTotal = new AtomicLong();
     private final MemoryMXBean memoryBean;
-    private final ScheduledExecutorService scheduledExecutor;
 
     private long lastMemoryCheck = 0;
 
@@ -37,14 +36,6 @@ public class SnowPerformanceMonitor {
      */
     public SnowPerformanceMonitor() {
         this.memoryBean = ManagementFactory.getMemoryMXBean();
-        this.scheduledExecutor = Executors.newScheduledThreadPool(1, r -> {
-            Thread t = new Thread(r, "SnowPerformance-Monitor");
-            t.setDaemon(true);
-            return t;
-        });
-
-        // 启动定期清理任务
-        scheduledExecutor.scheduleAtFixedRate(this::performMaintenance, 30, 30, TimeUnit.SECONDS);
     }
 
     /**
@@ -56,11 +47,10 @@ public class SnowPerformanceMonitor {
         totalOperations.incrementAndGet();
         totalProcessTime.addAndGet(processTimeMs);
         recentTimes.offer(processTimeMs);
+        recentCount.incrementAndGet();
+        recentTotal.addAndGet(processTimeMs);
 
-        // 保持最近100次记录
-        while (recentTimes.size() > 100) {
-            recentTimes.poll();
-        }
+        trimRecentTimes();
     }
 
     /**
@@ -69,10 +59,8 @@ public class SnowPerformanceMonitor {
      * @return 平均处理时间（毫秒）
      */
     public double getAverageProcessTime() {
-        if (recentTimes.isEmpty()) {
-            return 0;
-        }
-        return recentTimes.stream().mapToLong(Long::longValue).average().orElse(0);
+        long count = recentCount.get();
+        return count == 0 ? 0 : (double) recentTotal.get() / count;
     }
 
     /**
@@ -122,27 +110,24 @@ public class SnowPerformanceMonitor {
     }
 
     /**
-     * 关闭性能监控器
+     * 执行维护任务，由{@link SnowService}的调度线程定期调用
      */
-    public void shutdown() {
-        scheduledExecutor.shutdown();
-        try {
-            if (!scheduledExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                scheduledExecutor.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            scheduledExecutor.shutdownNow();
-            Thread.currentThread().interrupt();
-        }
+    void performMaintenance() {
+        // 清理过期的性能记录
+        trimRecentTimes();
     }
 
     /**
-     * 执行维护任务
+     * 保持最近100次记录
      */
-    private void performMaintenance() {
-        // 清理过期的性能记录
-        while (recentTimes.size() > 100) {
-            recentTimes.poll();
+    private void trimRecentTimes() {
+        while (recentCount.get() > 100) {
+            Long removed = recentTimes.poll();
+            if (removed == null) {
+                break;
+            }
+            recentCount.decrementAndGet();
+            recentTotal.addAndGet(-removed);
         }
     }
 }
\ No newline at end of file
@@ -1,8 +1,9 @@
 package com.flechazo.modernfurniture.util.snow;
 
 import com.flechazo.modernfurniture.config.module.SnowGenerationConfig;
+import com.flechazo.modernfurniture.util.room.PassabilityTable;
 import net.minecraft.core.BlockPos;
-import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.BlockGetter;
 import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.SnowLayerBlock;
 import net.minecraft.world.level.block.state.BlockState;
@@ -38,10 +39,10 @@ public class SnowPlacementChecker {
      *
      * @param pos          位置
      * @param currentState 当前方块状态
-     * @param level        服务器世界
+     * @param level        方块读取来源，工作线程中应传入世界快照
      * @return 是否可以放置
      */
-    public boolean canPlaceSnow(BlockPos pos, BlockState currentState, ServerLevel level) {
+    public boolean canPlaceSnow(BlockPos pos, BlockState currentState, BlockGetter level) {
         if (currentState.isAir()) {
             return canPlaceSnowOnAir(pos, level);
         }
@@ -57,16 +58,15 @@ public class SnowPlacementChecker {
      * 检查是否可以在空气中放置积雪
      *
      * @param pos   位置
-     * @param level 服务器世界
+     * @param level 方块读取来源
      * @return 是否可以放置
      */
-    private boolean canPlaceSnowOnAir(BlockPos pos, ServerLevel level) {
-        BlockPos belowPos = pos.below();
-        BlockState belowState = level.getBlockState(belowPos);
+    private boolean canPlaceSnowOnAir(BlockPos pos, BlockGetter level) {
+        BlockState belowState = level.getBlockState(pos.below());
         Random random = threadLocalRandom.get();
 
         // 地面积雪逻辑
-        if (!belowState.isAir() && belowState.isSolidRender(level, belowPos)) {
+        if (PassabilityTable.isSolidFloor(belowState)) {
             double probability = SnowGenerationConfig.groundSnowProbability;
             return random.nextFloat() < probability;
         }
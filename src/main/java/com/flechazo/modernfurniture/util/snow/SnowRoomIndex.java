@@ -0,0 +1,136 @@
+package com.flechazo.modernfurniture.util.snow;
+
+import com.flechazo.modernfurniture.util.room.RoomShape;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 每个服务器世界的积雪房间空间索引
+ *
+ * <p>把方块事件只分发给受影响的积雪管理器，不再让每个管理器各自监听全部事件。</p>
+ *
+ * <h2>索引结构</h2>
+ * <ul>
+ *   <li>每个房间按其分区向外扩张一个分区后登记，覆盖{@link #EVENT_RADIUS}格内的所有位置</li>
+ *   <li>查询时按事件所在分区取出候选管理器，再用{@link RoomShape#isNear}精确判断</li>
+ * </ul>
+ *
+ * <p>只能在服务器线程上访问。</p>
+ */
+public class SnowRoomIndex {
+    public static final int EVENT_RADIUS = 3;
+
+    private static final Map<ServerLevel, SnowRoomIndex> INDICES = new WeakHashMap<>();
+
+    private final Long2ObjectOpenHashMap<List<SnowManager>> sectionIndex = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * 获取世界对应的索引
+     *
+     * @param level 服务器世界
+     * @return 积雪房间索引
+     */
+    public static SnowRoomIndex get(ServerLevel level) {
+        return INDICES.computeIfAbsent(level, key -> new SnowRoomIndex());
+    }
+
+    /**
+     * 把方块变化分发给附近的积雪管理器
+     *
+     * @param level  服务器世界
+     * @param pos    变化位置
+     * @param reason 变化原因
+     */
+    public static void dispatch(ServerLevel level, BlockPos pos, String reason) {
+        SnowRoomIndex index = INDICES.get(level);
+        if (index == null) {
+            return;
+        }
+
+        List<SnowManager> managers = index.sectionIndex.get(SectionPos.asLong(pos));
+        if (managers == null) {
+            return;
+        }
+        for (int i = 0; i < managers.size(); i++) {
+            SnowManager manager = managers.get(i);
+            if (manager.getRoom().isNear(pos, EVENT_RADIUS)) {
+                manager.onBlockChanged(pos, reason);
+            }
+        }
+    }
+
+    /**
+     * 世界卸载时丢弃索引
+     *
+     * @param level 服务器世界
+     */
+    public static void unload(ServerLevel level) {
+        INDICES.remove(level);
+    }
+
+    /**
+     * 登记积雪管理器
+     */
+    void add(SnowManager manager, RoomShape room) {
+        LongIterator iterator = dilatedSections(room).iterator();
+        while (iterator.hasNext()) {
+            sectionIndex.computeIfAbsent(iterator.nextLong(), key -> new ArrayList<>(1)).add(manager);
+        }
+    }
+
+    /**
+     * 移除积雪管理器
+     */
+    void remove(SnowManager manager, RoomShape room) {
+        LongIterator iterator = dilatedSections(room).iterator();
+        while (iterator.hasNext()) {
+            long key = iterator.nextLong();
+            List<SnowManager> managers = sectionIndex.get(key);
+            if (managers != null) {
+                managers.remove(manager);
+                if (managers.isEmpty()) {
+                    sectionIndex.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * 房间形状变化后重新登记
+     */
+    void update(SnowManager manager, RoomShape previous, RoomShape room) {
+        remove(manager, previous);
+        add(manager, room);
+    }
+
+    public int getIndexedSectionCount() {
+        return sectionIndex.size();
+    }
+
+    /**
+     * 房间分区及其周围一圈分区，事件半径小于分区边长
+     */
+    private static LongOpenHashSet dilatedSections(RoomShape room) {
+        LongOpenHashSet sections = new LongOpenHashSet(room.getSectionCount() * 4);
+        for (int i = 0; i < room.getSectionCount(); i++) {
+            long key = room.getSectionKey(i);
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        sections.add(SectionPos.offset(key, dx, dy, dz));
+                    }
+                }
+            }
+        }
+        return sections;
+    }
+}
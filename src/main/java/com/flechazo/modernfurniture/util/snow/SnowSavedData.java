@@ -0,0 +1,329 @@
+package com.flechazo.modernfurniture.util.snow;
+
+import com.flechazo.modernfurniture.ModernFurniture;
+import com.flechazo.modernfurniture.config.module.SnowGenerationConfig;
+import com.flechazo.modernfurniture.util.room.RoomShape;
+import it.unimi.dsi.fastutil.longs.Long2ByteMap;
+import it.unimi.dsi.fastutil.longs.Long2ByteOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.SnowLayerBlock;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.saveddata.SavedData;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * 每个服务器世界的积雪持久化数据
+ *
+ * <p>记录本模组放置的积雪位置与层数，使重启或区块卸载后仍能识别并清除这些积雪，
+ * 覆盖率也不必从零开始。</p>
+ *
+ * <h2>数据来源</h2>
+ * <ul>
+ *   <li><b>运行中：</b>已附加的积雪管理器，保存时直接读取其积雪记录</li>
+ *   <li><b>暂存：</b>随空调区块卸载而释放的房间留下的积雪，按分区索引，
+ *   新的积雪管理器创建时按房间分区领回；所在区块加载期间超过{@link SnowGenerationConfig#snowParkTimeout}
+ *   仍无房间领回时转入融化队列</li>
+ *   <li><b>融化中：</b>停止制冷的房间留下的积雪，由{@link SnowMeltQueue}逐层融化，
+ *   同样可以被新的积雪管理器领回</li>
+ * </ul>
+ *
+ * <h2>存储格式</h2>
+ * <ul>
+ *   <li>Positions：BlockPos.asLong打包坐标</li>
+ *   <li>Layers：每个位置4位层数，两个位置共用一个字节</li>
+ *   <li>MeltPositions、MeltLayers：融化中的积雪，格式相同</li>
+ * </ul>
+ *
+ * <p>暂存与融化中的积雪被破坏或替换时随方块变化移除记录。
+ * 加载与领回的成本与积雪数量成正比，不扫描世界。只能在服务器线程上访问。</p>
+ */
+public class SnowSavedData extends SavedData {
+    private static final String DATA_NAME = ModernFurniture.MODID + "_snow";
+    private static final long PARK_CHECK_INTERVAL = 100;
+
+    // 分区坐标 -> (方块坐标 -> 层数)
+    private final Long2ObjectOpenHashMap<Long2ByteOpenHashMap> parked = new Long2ObjectOpenHashMap<>();
+    // 分区坐标 -> 区块加载期间无人领回的刻数，不随世界保存，重启后重新计时
+    private final Long2IntOpenHashMap parkedAge = new Long2IntOpenHashMap();
+    private final Set<SnowManager> attached = Collections.newSetFromMap(new WeakHashMap<>());
+    private final SnowMeltQueue melting = new SnowMeltQueue();
+    private int parkedCount = 0;
+
+    /**
+     * 获取世界对应的积雪数据
+     *
+     * @param level 服务器世界
+     * @return 积雪数据
+     */
+    public static SnowSavedData get(ServerLevel level) {
+        return level.getDataStorage().computeIfAbsent(SnowSavedData::load, SnowSavedData::new, DATA_NAME);
+    }
+
+    /**
+     * 每个世界刻调用一次，在预算内融化积雪
+     *
+     * @param level 服务器世界
+     */
+    public static void tick(ServerLevel level) {
+        SnowSavedData data = get(level);
+        if (!data.parked.isEmpty() && level.getGameTime() % PARK_CHECK_INTERVAL == 0) {
+            data.expireParked(level);
+        }
+        if (!data.melting.isEmpty() && data.melting.tick(level, SnowGenerationConfig.snowMeltPerTick) > 0) {
+            data.setDirty();
+        }
+    }
+
+    /**
+     * 暂存的积雪被破坏、替换或改变层数后同步记录，融化队列在融化时自行跳过已不是积雪的位置
+     *
+     * @param level 服务器世界
+     * @param pos   原本是积雪的位置
+     * @param state 变化后的方块状态
+     */
+    public static void onSnowChanged(ServerLevel level, BlockPos pos, BlockState state) {
+        SnowSavedData data = get(level);
+        long sectionKey = SectionPos.asLong(pos);
+        Long2ByteOpenHashMap section = data.parked.get(sectionKey);
+        if (section == null || !section.containsKey(pos.asLong())) {
+            return;
+        }
+
+        if (state.getBlock() == Blocks.SNOW) {
+            section.put(pos.asLong(), (byte) (int) state.getValue(SnowLayerBlock.LAYERS));
+        } else {
+            section.remove(pos.asLong());
+            data.parkedCount--;
+            if (section.isEmpty()) {
+                data.parked.remove(sectionKey);
+                data.parkedAge.remove(sectionKey);
+            }
+        }
+        data.setDirty();
+    }
+
+    public static SnowSavedData load(CompoundTag tag) {
+        SnowSavedData data = new SnowSavedData();
+        read(tag, "Positions", "Layers", data::park);
+        read(tag, "MeltPositions", "MeltLayers", data.melting::add);
+        ModernFurniture.LOGGER.debug("[积雪存档] 已加载{}处积雪，{}处正在融化", data.parkedCount, data.melting.size());
+        return data;
+    }
+
+    @Override
+    public CompoundTag save(CompoundTag tag) {
+        LongArrayList positions = new LongArrayList(parkedCount);
+        ByteArrayBuilder layers = new ByteArrayBuilder(parkedCount);
+        SnowOperationExecutor.SnowCellConsumer writer = (pos, snowLayers) -> {
+            positions.add(pos);
+            layers.add(snowLayers);
+        };
+
+        for (Long2ByteOpenHashMap section : parked.values()) {
+            for (Long2ByteMap.Entry entry : section.long2ByteEntrySet()) {
+                writer.accept(entry.getLongKey(), entry.getByteValue());
+            }
+        }
+        for (SnowManager manager : attached) {
+            manager.forEachSnow(writer);
+        }
+        tag.putLongArray("Positions", positions.toLongArray());
+        tag.putByteArray("Layers", layers.toByteArray());
+
+        LongArrayList meltPositions = new LongArrayList(melting.size());
+        ByteArrayBuilder meltLayers = new ByteArrayBuilder(melting.size());
+        melting.forEach((pos, snowLayers) -> {
+            meltPositions.add(pos);
+            meltLayers.add(snowLayers);
+        });
+        tag.putLongArray("MeltPositions", meltPositions.toLongArray());
+        tag.putByteArray("MeltLayers", meltLayers.toByteArray());
+        return tag;
+    }
+
+    /**
+     * 附加积雪管理器，并领回其房间内暂存的积雪
+     *
+     * @param manager 积雪管理器
+     * @param room    房间形状
+     */
+    void attach(SnowManager manager, RoomShape room) {
+        attached.add(manager);
+        adopt(manager, room);
+    }
+
+    /**
+     * 领回房间内暂存的积雪，房间形状变化后也会调用
+     *
+     * @param manager 积雪管理器
+     * @param room    房间形状
+     */
+    void adopt(SnowManager manager, RoomShape room) {
+        // 融化中的积雪同样领回，融化随即中断
+        int adopted = melting.adopt(manager, room);
+        if (!parked.isEmpty()) {
+            adopted += adoptParked(manager, room);
+        }
+
+        if (adopted > 0) {
+            setDirty();
+            ModernFurniture.LOGGER.debug("[积雪存档] 房间领回{}处积雪", adopted);
+        }
+    }
+
+    /**
+     * 管理器释放时保留其积雪，等待同一位置的房间再次形成
+     *
+     * @param manager 积雪管理器
+     */
+    void park(SnowManager manager) {
+        if (attached.remove(manager)) {
+            manager.forEachSnow(this::park);
+            setDirty();
+        }
+    }
+
+    /**
+     * 管理器关闭时将其积雪交给融化队列
+     *
+     * @param manager 积雪管理器
+     */
+    void melt(SnowManager manager) {
+        if (attached.remove(manager)) {
+            manager.forEachSnow(melting::add);
+            setDirty();
+        }
+    }
+
+    public int getParkedCount() {
+        return parkedCount;
+    }
+
+    public int getMeltingCount() {
+        return melting.size();
+    }
+
+    /**
+     * 领回房间内暂存的积雪
+     *
+     * @return 领回的位置数量
+     */
+    private int adoptParked(SnowManager manager, RoomShape room) {
+        int adopted = 0;
+        BlockPos.MutableBlockPos cursor = new BlockPos.MutableBlockPos();
+        for (int i = 0; i < room.getSectionCount(); i++) {
+            Long2ByteOpenHashMap section = parked.get(room.getSectionKey(i));
+            if (section == null) {
+                continue;
+            }
+
+            ObjectIterator<Long2ByteMap.Entry> iterator = section.long2ByteEntrySet().fastIterator();
+            while (iterator.hasNext()) {
+                Long2ByteMap.Entry entry = iterator.next();
+                if (room.contains(cursor.set(entry.getLongKey()))) {
+                    manager.restoreSnow(entry.getLongKey(), entry.getByteValue());
+                    iterator.remove();
+                    adopted++;
+                }
+            }
+            if (section.isEmpty()) {
+                parked.remove(room.getSectionKey(i));
+                parkedAge.remove(room.getSectionKey(i));
+            }
+        }
+        parkedCount -= adopted;
+        return adopted;
+    }
+
+    /**
+     * 累计已加载分区的暂存时间，超时的分区转入融化队列
+     */
+    private void expireParked(ServerLevel level) {
+        long timeout = SnowGenerationConfig.snowParkTimeout * 20L;
+        int expired = 0;
+
+        ObjectIterator<Long2ObjectMap.Entry<Long2ByteOpenHashMap>> iterator = parked.long2ObjectEntrySet().fastIterator();
+        while (iterator.hasNext()) {
+            Long2ObjectMap.Entry<Long2ByteOpenHashMap> entry = iterator.next();
+            long sectionKey = entry.getLongKey();
+            // 区块未加载时房间不可能形成，不计时
+            if (level.getChunkSource().getChunkNow(SectionPos.x(sectionKey), SectionPos.z(sectionKey)) == null) {
+                continue;
+            }
+            if (parkedAge.addTo(sectionKey, (int) PARK_CHECK_INTERVAL) + PARK_CHECK_INTERVAL < timeout) {
+                continue;
+            }
+
+            Long2ByteOpenHashMap section = entry.getValue();
+            for (Long2ByteMap.Entry cell : section.long2ByteEntrySet()) {
+                melting.add(cell.getLongKey(), cell.getByteValue());
+            }
+            expired += section.size();
+            iterator.remove();
+            parkedAge.remove(sectionKey);
+        }
+
+        if (expired > 0) {
+            parkedCount -= expired;
+            setDirty();
+            ModernFurniture.LOGGER.debug("[积雪存档] {}处暂存积雪无房间领回，开始融化", expired);
+        }
+    }
+
+    private void park(long pos, int layers) {
+        Long2ByteOpenHashMap section = parked.computeIfAbsent(SectionPos.blockToSection(pos), key -> new Long2ByteOpenHashMap());
+        if (section.put(pos, (byte) layers) == section.defaultReturnValue()) {
+            parkedCount++;
+        }
+    }
+
+    /**
+     * 读取打包的坐标与层数
+     */
+    private static void read(CompoundTag tag, String positionsKey, String layersKey, SnowOperationExecutor.SnowCellConsumer consumer) {
+        long[] positions = tag.getLongArray(positionsKey);
+        byte[] layers = tag.getByteArray(layersKey);
+        for (int i = 0; i < positions.length; i++) {
+            int nibble = i >> 1 < layers.length ? layers[i >> 1] >> ((i & 1) << 2) & 15 : 1;
+            consumer.accept(positions[i], Math.max(1, nibble));
+        }
+    }
+
+    /**
+     * 按4位打包层数
+     */
+    private static class ByteArrayBuilder {
+        private byte[] bytes;
+        private int count = 0;
+
+        ByteArrayBuilder(int expected) {
+            this.bytes = new byte[Math.max(1, (expected + 1) >> 1)];
+        }
+
+        void add(int layers) {
+            int index = count >> 1;
+            if (index >= bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[index] |= (byte) ((layers & 15) << ((count & 1) << 2));
+            count++;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, (count + 1) >> 1);
+        }
+    }
+}
@@ -1,8 +1,8 @@
 package com.flechazo.modernfurniture.util.snow;
 
+import com.flechazo.modernfurniture.util.room.RoomShape;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.SectionPos;
-import net.minecraft.world.level.ChunkPos;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -20,31 +20,74 @@ import java.util.concurrent.ConcurrentHashMap;
  * </ul>
  */
 public class SnowSectionManager {
-    private final Map<SectionPos, Set<BlockPos>> sectionPartitions;
-    private final Map<ChunkPos, Set<SectionPos>> chunkToSections;
     private final Set<SectionPos> activeSections;
+    private volatile RoomShape room;
+    private volatile SnowFloorIndex floorIndex;
 
     /**
      * 构造分区管理器
      *
-     * @param roomBlocks 房间方块位置集合
+     * @param room 房间形状
      */
-    public SnowSectionManager(Set<BlockPos> roomBlocks) {
-        this.sectionPartitions = new ConcurrentHashMap<>();
-        this.chunkToSections = new ConcurrentHashMap<>();
+    public SnowSectionManager(RoomShape room) {
         this.activeSections = ConcurrentHashMap.newKeySet();
 
-        initializeSectionPartitions(roomBlocks);
+        updateRoom(room);
     }
 
     /**
-     * 获取指定分区的方块位置
+     * 替换房间形状并重建活跃分区，成本与分区数量成正比
      *
-     * @param sectionPos 分区位置
-     * @return 方块位置集合
+     * @param room 新的房间形状
      */
-    public Set<BlockPos> getSectionBlocks(SectionPos sectionPos) {
-        return sectionPartitions.getOrDefault(sectionPos, Collections.emptySet());
+    public void updateRoom(RoomShape room) {
+        this.room = room;
+        this.floorIndex = SnowFloorIndex.of(room);
+
+        Set<SectionPos> sections = new HashSet<>();
+        for (int i = 0; i < room.getSectionCount(); i++) {
+            sections.add(SectionPos.of(room.getSectionKey(i)));
+        }
+        activeSections.retainAll(sections);
+        activeSections.addAll(sections);
+    }
+
+    /**
+     * 获取当前房间形状，分区内的方块通过{@link RoomShape#forEachInSection}遍历
+     *
+     * @return 房间形状
+     */
+    public RoomShape getRoom() {
+        return room;
+    }
+
+    /**
+     * 获取当前房间的地面索引，其中的房间形状与索引一致
+     *
+     * @return 地面索引
+     */
+    public SnowFloorIndex getFloorIndex() {
+        return floorIndex;
+    }
+
+    /**
+     * 下方方块变化后更新位置是否为地面，只在服务器线程上调用
+     *
+     * <p>下方不属于房间的位置始终是地面，不受影响。</p>
+     *
+     * @param pos   位置
+     * @param floor 下方是否为实心地面
+     * @return 地面索引是否发生变化
+     */
+    public boolean updateFloor(BlockPos pos, boolean floor) {
+        RoomShape current = room;
+        if (!current.contains(pos) || current.isFloor(pos.getX(), pos.getY(), pos.getZ())) {
+            return false;
+        }
+
+        SnowFloorIndex previous = floorIndex;
+        floorIndex = previous.withFloor(pos, floor);
+        return floorIndex != previous;
     }
 
     /**
@@ -83,18 +126,4 @@ public class SnowSectionManager {
 
         return sections.subList(0, maxSections);
     }
-
-    /**
-     * 初始化分区划分
-     */
-    private void initializeSectionPartitions(Set<BlockPos> roomBlocks) {
-        for (BlockPos pos : roomBlocks) {
-            SectionPos sectionPos = SectionPos.of(pos);
-            ChunkPos chunkPos = new ChunkPos(pos);
-
-            sectionPartitions.computeIfAbsent(sectionPos, k -> ConcurrentHashMap.newKeySet()).add(pos);
-            chunkToSections.computeIfAbsent(chunkPos, k -> ConcurrentHashMap.newKeySet()).add(sectionPos);
-            activeSections.add(sectionPos);
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,147 @@
+package com.flechazo.modernfurniture.util.snow;
+
+import com.flechazo.modernfurniture.ModernFurniture;
+import com.flechazo.modernfurniture.config.module.SnowGenerationConfig;
+import net.minecraft.server.level.ServerLevel;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 每个服务器世界的积雪服务
+ *
+ * <p>世界内所有积雪管理器共用一个调度线程和一个有界工作线程池，
+ * 不再为每个管理器单独创建线程。</p>
+ *
+ * <h2>线程</h2>
+ * <ul>
+ *   <li><b>调度线程：</b>按固定间隔为所有已注册的管理器执行维护任务（批量缓存失效、性能记录清理）</li>
+ *   <li><b>工作线程：</b>执行降雪计算，线程数由{@link SnowGenerationConfig#snowWorkerThreads}限制</li>
+ * </ul>
+ *
+ * <p>线程在第一个管理器注册时创建，世界卸载时关闭。</p>
+ */
+public class SnowService {
+    private static final Map<ServerLevel, SnowService> SERVICES = new WeakHashMap<>();
+    private static final long MAINTENANCE_INTERVAL_MS = 100;
+
+    private final String name;
+    private final Set<SnowManager> managers = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService scheduler;
+    private ExecutorService workers;
+
+    private SnowService(ServerLevel level) {
+        this.name = level.dimension().location().toString();
+    }
+
+    /**
+     * 获取世界对应的积雪服务
+     *
+     * @param level 服务器世界
+     * @return 积雪服务
+     */
+    public static SnowService get(ServerLevel level) {
+        return SERVICES.computeIfAbsent(level, SnowService::new);
+    }
+
+    /**
+     * 世界卸载时关闭服务线程
+     *
+     * @param level 服务器世界
+     */
+    public static void unload(ServerLevel level) {
+        SnowService service = SERVICES.remove(level);
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    /**
+     * 注册积雪管理器，之后由服务定期执行其维护任务
+     *
+     * @param manager 积雪管理器
+     */
+    public void register(SnowManager manager) {
+        ensureStarted();
+        managers.add(manager);
+    }
+
+    /**
+     * 注销积雪管理器
+     *
+     * @param manager 积雪管理器
+     */
+    public void unregister(SnowManager manager) {
+        managers.remove(manager);
+    }
+
+    /**
+     * 获取降雪计算使用的工作线程池
+     *
+     * @return 工作线程池
+     */
+    public Executor getExecutor() {
+        ensureStarted();
+        return workers;
+    }
+
+    public int getManagerCount() {
+        return managers.size();
+    }
+
+    private void ensureStarted() {
+        if (scheduler != null) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(daemonFactory("SnowService-Scheduler-" + name));
+        workers = Executors.newFixedThreadPool(SnowGenerationConfig.snowWorkerThreads, daemonFactory("SnowService-Worker-" + name));
+        scheduler.scheduleAtFixedRate(this::performMaintenance,
+                MAINTENANCE_INTERVAL_MS, MAINTENANCE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        ModernFurniture.LOGGER.debug("[积雪服务] 已启动: {}, {}个工作线程", name, SnowGenerationConfig.snowWorkerThreads);
+    }
+
+    /**
+     * 依次执行所有管理器的维护任务
+     */
+    private void performMaintenance() {
+        for (SnowManager manager : managers) {
+            try {
+                manager.performMaintenance();
+            } catch (Exception e) {
+                ModernFurniture.LOGGER.warn("积雪维护任务失败", e);
+            }
+        }
+    }
+
+    private void shutdown() {
+        managers.clear();
+        if (scheduler == null) {
+            return;
+        }
+
+        scheduler.shutdown();
+        workers.shutdownNow();
+        try {
+            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        ModernFurniture.LOGGER.debug("[积雪服务] 已关闭: {}", name);
+    }
+
+    private static ThreadFactory daemonFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
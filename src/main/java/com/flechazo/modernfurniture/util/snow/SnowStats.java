@@ -1,39 +1,47 @@
 package com.flechazo.modernfurniture.util.snow;
 
-import net.minecraft.core.BlockPos;
-
-import java.util.HashMap;
-import java.util.Map;
-
-public record SnowStats(int totalSnowBlocks, int snowCycles, Map<BlockPos, Integer> snowLayers,
+/**
+ * 积雪统计快照
+ *
+ * <p>只包含计数与层数分布，创建成本与房间大小无关。需要逐个位置的数据时使用
+ * {@link SnowManager#getSnowLayerPage}分页读取。</p>
+ *
+ * @param layerHistogram 下标为层数减一的位置数量
+ */
+public record SnowStats(int totalSnowBlocks, int snowCycles, int[] layerHistogram,
                         double averageProcessTime, double currentDensity, int activeSections, long cacheHitRate,
                         long memoryUsage, double currentCoverage, boolean reachedCycleLimit,
                         boolean reachedCoverageLimit) {
-    public SnowStats(int totalSnowBlocks, int snowCycles, Map<BlockPos, Integer> snowLayers,
-                     double averageProcessTime, double currentDensity, int activeSections,
-                     long cacheHitRate, long memoryUsage, double currentCoverage,
-                     boolean reachedCycleLimit, boolean reachedCoverageLimit) {
-        this.totalSnowBlocks = totalSnowBlocks;
-        this.snowCycles = snowCycles;
-        this.snowLayers = new HashMap<>(snowLayers);
-        this.averageProcessTime = averageProcessTime;
-        this.currentDensity = currentDensity;
-        this.activeSections = activeSections;
-        this.cacheHitRate = cacheHitRate;
-        this.memoryUsage = memoryUsage;
-        this.currentCoverage = currentCoverage;
-        this.reachedCycleLimit = reachedCycleLimit;
-        this.reachedCoverageLimit = reachedCoverageLimit;
+
+    /**
+     * 获取指定层数的位置数量
+     *
+     * @param layers 层数，1..8
+     * @return 位置数量
+     */
+    public int getLayerCount(int layers) {
+        return layers >= 1 && layers <= layerHistogram.length ? layerHistogram[layers - 1] : 0;
+    }
+
+    /**
+     * 获取积雪总层数
+     */
+    public long getTotalLayers() {
+        long total = 0;
+        for (int i = 0; i < layerHistogram.length; i++) {
+            total += (long) layerHistogram[i] * (i + 1);
+        }
+        return total;
     }
 
     @Override
     public String toString() {
         return String.format(
-                "SnowStats{blocks=%d, cycles=%d, coverage=%.2f%%, avgTime=%.2fms, sections=%d, " +
-                        "cacheHit=%d, memory=%dMB, cycleLimit=%s, coverageLimit=%s}",
-                totalSnowBlocks, snowCycles, currentCoverage * 100, averageProcessTime,
+                "SnowStats{blocks=%d, layers=%d, cycles=%d, coverage=%.2f%%, avgTime=%.2fms, sections=%d, " +
+                        "cacheHit=%d%%, memory=%dMB, cycleLimit=%s, coverageLimit=%s}",
+                totalSnowBlocks, getTotalLayers(), snowCycles, currentCoverage * 100, averageProcessTime,
                 activeSections, cacheHitRate, memoryUsage / (1024 * 1024),
                 reachedCycleLimit, reachedCoverageLimit
         );
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,86 @@
+package com.flechazo.modernfurniture.util.snow;
+
+import net.minecraft.core.BlockPos;
+
+import java.util.Collection;
+
+/**
+ * 积雪位置权重
+ *
+ * <p>靠近空调出风口的位置积雪更多：权重为{@code 1 + NEAR_BONUS / (1 + d² / FALLOFF)}，
+ * d为到最近一台空调的距离。没有空调位置时所有位置权重相同。</p>
+ *
+ * <p>实例不可变，可以在线程之间安全共享。</p>
+ */
+public final class SnowWeights {
+    public static final SnowWeights UNIFORM = new SnowWeights(new int[0]);
+
+    private static final float NEAR_BONUS = 3.0f;
+    private static final float FALLOFF = 16.0f;
+
+    // 每三个数为一台空调的x, y, z
+    private final int[] sources;
+
+    private SnowWeights(int[] sources) {
+        this.sources = sources;
+    }
+
+    /**
+     * 按空调位置创建权重
+     *
+     * @param sources 空调方块坐标
+     * @return 权重
+     */
+    public static SnowWeights of(Collection<BlockPos> sources) {
+        if (sources.isEmpty()) {
+            return UNIFORM;
+        }
+
+        int[] coords = new int[sources.size() * 3];
+        int i = 0;
+        for (BlockPos pos : sources) {
+            coords[i++] = pos.getX();
+            coords[i++] = pos.getY();
+            coords[i++] = pos.getZ();
+        }
+        return new SnowWeights(coords);
+    }
+
+    public boolean isUniform() {
+        return sources.length == 0;
+    }
+
+    /**
+     * 计算位置的权重
+     */
+    public float weight(int x, int y, int z) {
+        if (sources.length == 0) {
+            return 1.0f;
+        }
+
+        long nearest = Long.MAX_VALUE;
+        for (int i = 0; i < sources.length; i += 3) {
+            long dx = x - sources[i], dy = y - sources[i + 1], dz = z - sources[i + 2];
+            nearest = Math.min(nearest, dx * dx + dy * dy + dz * dz);
+        }
+        return 1.0f + NEAR_BONUS / (1.0f + nearest / FALLOFF);
+    }
+
+    /**
+     * 为分区内的位置创建抽样器
+     *
+     * @param positions 分区位置
+     * @return 抽样器，权重相同时不建表
+     */
+    public AliasSampler createSampler(SectionPositions positions) {
+        if (sources.length == 0) {
+            return AliasSampler.uniform(positions.size());
+        }
+
+        float[] weights = new float[positions.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = weight(positions.getX(i), positions.getY(i), positions.getZ(i));
+        }
+        return AliasSampler.weighted(weights);
+    }
+}
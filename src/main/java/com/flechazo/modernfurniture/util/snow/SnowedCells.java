@@ -0,0 +1,154 @@
+package com.flechazo.modernfurniture.util.snow;
+
+import com.flechazo.modernfurniture.util.room.RoomShape;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+
+import java.util.function.LongConsumer;
+
+/**
+ * 已有积雪位置的只读快照
+ *
+ * <p>按分区存储4096位掩码，供工作线程上的积雪计算判断位置是否已有积雪。</p>
+ *
+ * <h2>写时复制</h2>
+ * <p>{@link Builder}在服务器线程上维护当前的积雪位置。创建快照只复制分区表，成本与分区数量成正比；
+ * 之后第一次修改某个分区时才复制该分区的掩码，快照中的掩码永远不会被修改。</p>
+ *
+ * <p>实例不可变，可以在线程之间安全共享。</p>
+ */
+public final class SnowedCells {
+    public static final SnowedCells EMPTY = new SnowedCells(new Long2ObjectOpenHashMap<>(), 0);
+
+    private final Long2ObjectOpenHashMap<long[]> sections;
+    private final int size;
+
+    private SnowedCells(Long2ObjectOpenHashMap<long[]> sections, int size) {
+        this.sections = sections;
+        this.size = size;
+    }
+
+    /**
+     * 检查位置是否已有积雪
+     */
+    public boolean contains(BlockPos pos) {
+        long[] mask = sections.get(SectionPos.asLong(pos));
+        if (mask == null) {
+            return false;
+        }
+        int cell = RoomShape.cellIndex(pos.getX(), pos.getY(), pos.getZ());
+        return (mask[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * 遍历所有积雪位置
+     *
+     * @param consumer 接收BlockPos.asLong打包坐标
+     */
+    public void forEach(LongConsumer consumer) {
+        for (Long2ObjectMap.Entry<long[]> entry : sections.long2ObjectEntrySet()) {
+            long key = entry.getLongKey();
+            int baseX = SectionPos.sectionToBlockCoord(SectionPos.x(key));
+            int baseY = SectionPos.sectionToBlockCoord(SectionPos.y(key));
+            int baseZ = SectionPos.sectionToBlockCoord(SectionPos.z(key));
+            long[] mask = entry.getValue();
+            for (int word = 0; word < mask.length; word++) {
+                long bits = mask[word];
+                while (bits != 0) {
+                    int cell = (word << 6) | Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    consumer.accept(BlockPos.asLong(baseX + RoomShape.localX(cell), baseY + RoomShape.localY(cell), baseZ + RoomShape.localZ(cell)));
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 可修改的积雪位置集合，只在服务器线程上使用
+     */
+    static final class Builder {
+        private Long2ObjectOpenHashMap<long[]> sections = new Long2ObjectOpenHashMap<>();
+        // 上次创建快照之后复制过、不再与快照共享的分区
+        private final LongOpenHashSet owned = new LongOpenHashSet();
+        private int size = 0;
+
+        /**
+         * 加入位置
+         *
+         * @param pos BlockPos.asLong打包坐标
+         */
+        void add(long pos) {
+            long key = SectionPos.blockToSection(pos);
+            long[] mask = sections.get(key);
+            int cell = RoomShape.cellIndex(BlockPos.getX(pos), BlockPos.getY(pos), BlockPos.getZ(pos));
+            long bit = 1L << cell;
+            if (mask != null && (mask[cell >>> 6] & bit) != 0) {
+                return;
+            }
+            if (mask == null) {
+                mask = new long[RoomShape.SECTION_WORDS];
+                sections.put(key, mask);
+                owned.add(key);
+            } else {
+                mask = own(key, mask);
+            }
+            mask[cell >>> 6] |= bit;
+            size++;
+        }
+
+        /**
+         * 移除位置
+         *
+         * @param pos BlockPos.asLong打包坐标
+         */
+        void remove(long pos) {
+            long key = SectionPos.blockToSection(pos);
+            long[] mask = sections.get(key);
+            int cell = RoomShape.cellIndex(BlockPos.getX(pos), BlockPos.getY(pos), BlockPos.getZ(pos));
+            long bit = 1L << cell;
+            if (mask == null || (mask[cell >>> 6] & bit) == 0) {
+                return;
+            }
+            mask = own(key, mask);
+            mask[cell >>> 6] &= ~bit;
+            size--;
+        }
+
+        void clear() {
+            // 快照仍然引用旧的分区表
+            sections = new Long2ObjectOpenHashMap<>();
+            owned.clear();
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * 创建快照，成本与分区数量成正比
+         */
+        SnowedCells snapshot() {
+            owned.clear();
+            return new SnowedCells(sections.clone(), size);
+        }
+
+        /**
+         * 第一次修改与快照共享的分区前复制其掩码
+         */
+        private long[] own(long key, long[] mask) {
+            if (owned.add(key)) {
+                mask = mask.clone();
+                sections.put(key, mask);
+            }
+            return mask;
+        }
+    }
+}